@@ -0,0 +1,100 @@
+package com.library.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.library.domain.Book;
+import com.library.domain.CD;
+import com.library.domain.LibraryItem;
+import com.library.domain.Loan;
+import com.library.domain.User;
+import com.library.repository.InMemoryItemRepository;
+import com.library.repository.InMemoryLoanRepository;
+import com.library.repository.LoanRepository;
+
+/**
+ * Synthetic catalogs, users and loans shared by the benchmarks. Everything is generated
+ * from a fixed seed so runs are comparable.
+ */
+final class BenchmarkData {
+    static final LocalDate TODAY = LocalDate.of(2024, 6, 1);
+
+    private static final String[] WORDS = {
+        "river", "shadow", "garden", "winter", "silent", "empire", "glass", "ocean", "forest",
+        "memory", "crown", "signal", "harbor", "engine", "lantern", "orbit", "paper", "stone"
+    };
+
+    private BenchmarkData() {
+    }
+
+    static List<LibraryItem> catalog(int size) {
+        Random random = new Random(42);
+        List<LibraryItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String title = word(random) + " " + word(random) + " " + i;
+            String creator = word(random) + " " + word(random);
+            items.add(i % 4 == 0 ? new CD("cd-" + i, title, creator) : new Book("isbn-" + i, title, creator));
+        }
+        return items;
+    }
+
+    static InMemoryItemRepository itemRepository(List<LibraryItem> items) {
+        InMemoryItemRepository repository = new InMemoryItemRepository();
+        items.forEach(repository::save);
+        return repository;
+    }
+
+    static List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(new User("user-" + i, "Patron " + i, "pass"));
+        }
+        return users;
+    }
+
+    /**
+     * Saves one active loan per item, spread round-robin over {@code users}. Roughly one in
+     * ten loans is already overdue on {@link #TODAY}.
+     */
+    static InMemoryLoanRepository loanRepository(Path dir, List<LibraryItem> items, List<User> users) {
+        return populate(new InMemoryLoanRepository(dir.resolve("loans.dat").toString()), items, users);
+    }
+
+    static <R extends LoanRepository> R populate(R repository, List<LibraryItem> items, List<User> users) {
+        for (int i = 0; i < items.size(); i++) {
+            LibraryItem item = items.get(i);
+            int daysAgo = i % 10 == 0 ? item.getLoanPeriodDays() + 1 + i % 30 : i % item.getLoanPeriodDays();
+            item.setBorrowed(true);
+            repository.save(new Loan(item, users.get(i % users.size()), TODAY.minusDays(daysAgo)));
+        }
+        return repository;
+    }
+
+    static Path tempDir() throws IOException {
+        return Files.createTempDirectory("library-bench");
+    }
+
+    static void delete(Path dir) {
+        delete(dir.toFile());
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+}
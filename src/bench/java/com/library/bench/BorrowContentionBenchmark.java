@@ -0,0 +1,154 @@
+package com.library.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.library.domain.Book;
+import com.library.domain.Loan;
+import com.library.domain.User;
+import com.library.metrics.MetricsRegistry;
+import com.library.repository.InMemoryLoanRepository;
+import com.library.repository.LoanRepository;
+import com.library.service.LoanService;
+
+/**
+ * Throughput of {@link LoanService#borrowItem} at 1, 8 and 32 threads.
+ * <p>
+ * In the {@code ownItem} benchmarks every thread borrows and returns its own item, so
+ * total throughput should grow with the number of cores. {@code sharedItem} has every
+ * thread race for a single copy and shows the cost of the losing path.
+ * Persistence is stubbed out to isolate the borrow protocol itself, except in the
+ * {@code storedOwnItem} benchmarks, which borrow and return through an
+ * {@link InMemoryLoanRepository}, so every loan is journaled, archived and indexed while
+ * other threads do the same.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BorrowContentionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Library {
+        final LoanService loanService = new LoanService(new DiscardingLoanRepository(), () -> LocalDate.of(2024, 1, 1));
+        final Book sharedItem = new Book("shared", "Bestseller", "Author");
+        final AtomicInteger threadIds = new AtomicInteger();
+    }
+
+    @State(Scope.Benchmark)
+    public static class StoredLibrary {
+        Path dir;
+        LoanService loanService;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dir = BenchmarkData.tempDir();
+            loanService = new LoanService(
+                new InMemoryLoanRepository(dir.resolve("loans.dat").toString(), new MetricsRegistry()),
+                () -> LocalDate.of(2024, 1, 1));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            BenchmarkData.delete(dir);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Patron {
+        User user;
+        Book item;
+
+        @Setup
+        public void setUp(Library library) {
+            int id = library.threadIds.incrementAndGet();
+            user = new User("u" + id, "Patron " + id, "pass");
+            item = new Book("b" + id, "Own Copy " + id, "Author");
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String ownItem1(Library library, Patron patron) {
+        return borrowAndReturn(library, patron.user, patron.item);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String ownItem8(Library library, Patron patron) {
+        return borrowAndReturn(library, patron.user, patron.item);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public String ownItem32(Library library, Patron patron) {
+        return borrowAndReturn(library, patron.user, patron.item);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String sharedItem1(Library library, Patron patron) {
+        return borrowAndReturn(library, patron.user, library.sharedItem);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String sharedItem8(Library library, Patron patron) {
+        return borrowAndReturn(library, patron.user, library.sharedItem);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public String sharedItem32(Library library, Patron patron) {
+        return borrowAndReturn(library, patron.user, library.sharedItem);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String storedOwnItem1(StoredLibrary library, Patron patron) {
+        return borrowAndReturnStored(library, patron);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String storedOwnItem8(StoredLibrary library, Patron patron) {
+        return borrowAndReturnStored(library, patron);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public String storedOwnItem32(StoredLibrary library, Patron patron) {
+        return borrowAndReturnStored(library, patron);
+    }
+
+    private static String borrowAndReturnStored(StoredLibrary library, Patron patron) {
+        String result = library.loanService.borrowItem(patron.user, patron.item);
+        library.loanService.returnItem(patron.item.getId());
+        return result;
+    }
+
+    private static String borrowAndReturn(Library library, User user, Book item) {
+        String result = library.loanService.borrowItem(user, item);
+        if (result.startsWith("Success")) {
+            item.tryReturn();
+        }
+        return result;
+    }
+
+    private static final class DiscardingLoanRepository implements LoanRepository {
+        @Override public void save(Loan loan) { }
+        @Override public List<Loan> findAllActiveLoans() { return Collections.emptyList(); }
+        @Override public List<Loan> findActiveLoansByUser(User user) { return Collections.emptyList(); }
+        @Override public Optional<Loan> findActiveLoanByItem(String itemId) { return Optional.empty(); }
+        @Override public List<Loan> findLoansDueBefore(LocalDate date) { return Collections.emptyList(); }
+    }
+}
@@ -0,0 +1,78 @@
+package com.library.bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.library.domain.LibraryItem;
+import com.library.domain.Loan;
+import com.library.domain.User;
+import com.library.repository.ColumnarLoanRepository;
+import com.library.repository.InMemoryLoanRepository;
+import com.library.repository.LoanRepository;
+
+/**
+ * Object-per-loan store against the columnar store with the same active loans. Heap retained
+ * by each store is printed once per trial. About one loan in ten is overdue, so the overdue
+ * scan also builds that many {@link Loan} views in the columnar case.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ColumnarLoanRepositoryBenchmark {
+
+    @Param({"objects", "columnar"})
+    public String store;
+
+    @Param({"1000000"})
+    public int loanCount;
+
+    private Path dir;
+    private LoanRepository repository;
+    private User someUser;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = BenchmarkData.tempDir();
+        List<LibraryItem> items = BenchmarkData.catalog(loanCount);
+        List<User> users = BenchmarkData.users(loanCount / 10);
+        someUser = users.get(users.size() / 2);
+        String file = dir.resolve("loans.dat").toString();
+
+        long before = usedHeapAfterGc();
+        repository = store.equals("columnar") ? new ColumnarLoanRepository(file) : new InMemoryLoanRepository(file);
+        BenchmarkData.populate(repository, items, users);
+        System.out.printf("%n%s store: %,d bytes retained for %,d loans%n", store, usedHeapAfterGc() - before, loanCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public List<Loan> overdueScan() {
+        return repository.findLoansDueBefore(BenchmarkData.TODAY);
+    }
+
+    @Benchmark
+    public List<Loan> loansOfUser() {
+        return repository.findActiveLoansByUser(someUser);
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,85 @@
+package com.library.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.library.domain.Money;
+import com.library.domain.User;
+import com.library.service.FineService;
+
+/**
+ * Throughput of fine accruals and payments on one shared account at 1, 8 and 32 threads.
+ * <p>
+ * {@code atomic} uses the lock-free balance on {@link User}. {@code locked} does the same
+ * read-modify-write on a {@code double} under a monitor, the cheapest correct version of
+ * the balance handling it replaced, for comparison.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FinePaymentContentionBenchmark {
+
+    private static final Money FINE = Money.of(0.10);
+
+    @State(Scope.Benchmark)
+    public static class Account {
+        final User user = new User("u1", "Shared Account", "pass");
+        final FineService fineService = new FineService();
+        final LockedBalance locked = new LockedBalance();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean atomic1(Account account) {
+        return accrueAndPay(account);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean atomic8(Account account) {
+        return accrueAndPay(account);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean atomic32(Account account) {
+        return accrueAndPay(account);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean locked1(Account account) {
+        return account.locked.accrueAndPay();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean locked8(Account account) {
+        return account.locked.accrueAndPay();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean locked32(Account account) {
+        return account.locked.accrueAndPay();
+    }
+
+    private static boolean accrueAndPay(Account account) {
+        account.user.addFine(FINE);
+        return account.fineService.payFine(account.user, FINE);
+    }
+
+    static final class LockedBalance {
+        private double finesOwed;
+
+        synchronized boolean accrueAndPay() {
+            finesOwed += 0.10;
+            if (finesOwed <= 0) return false;
+            finesOwed = Math.max(0, finesOwed - 0.10);
+            return true;
+        }
+    }
+}
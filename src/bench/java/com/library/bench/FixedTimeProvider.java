@@ -0,0 +1,23 @@
+package com.library.bench;
+
+import java.time.LocalDate;
+
+import com.library.service.TimeProvider;
+
+/** A clock that stays on one day until a benchmark moves it. */
+public class FixedTimeProvider implements TimeProvider {
+    private volatile LocalDate date;
+
+    public FixedTimeProvider(LocalDate date) {
+        this.date = date;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    @Override
+    public LocalDate getDate() {
+        return date;
+    }
+}
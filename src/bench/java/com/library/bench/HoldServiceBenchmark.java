@@ -0,0 +1,80 @@
+package com.library.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.library.domain.LibraryItem;
+import com.library.domain.User;
+import com.library.repository.InMemoryLoanRepository;
+import com.library.service.HoldService;
+
+/**
+ * Placing and cancelling a hold, and handing a returned item to its first holder, with
+ * {@code holdCount} holds already waiting on 10,000 loaned items.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HoldServiceBenchmark {
+    private static final int ITEMS = 10_000;
+
+    @Param({"100000", "1000000"})
+    public int holdCount;
+
+    private Path dir;
+    private HoldService holdService;
+    private List<LibraryItem> items;
+    private List<User> users;
+    private User patron;
+    private int[] rounds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = BenchmarkData.tempDir();
+        items = BenchmarkData.catalog(ITEMS);
+        users = BenchmarkData.users(holdCount / ITEMS + 1);
+        InMemoryLoanRepository loans = BenchmarkData.loanRepository(dir, items, users.subList(0, 1));
+        holdService = new HoldService(BenchmarkData.itemRepository(items), loans, new FixedTimeProvider(BenchmarkData.TODAY));
+        for (int i = 0; i < holdCount; i++) {
+            holdService.placeHold(users.get(1 + i / ITEMS), items.get(i % ITEMS).getId());
+        }
+        patron = new User("patron", "Patron", "pass");
+        rounds = new int[ITEMS];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(dir);
+    }
+
+    /** Joins the back of a wait list and leaves it again. */
+    @Benchmark
+    public String placeAndCancelHold() {
+        String itemId = items.get(next++ % ITEMS).getId();
+        holdService.placeHold(patron, itemId);
+        return holdService.cancelHold(patron, itemId);
+    }
+
+    /**
+     * The hold bookkeeping of a return and the pickup. The holder then joins the back of the
+     * queue again, so each item's queue turns round in a fixed order.
+     */
+    @Benchmark
+    public long returnAndPickUp() {
+        int i = next++ % ITEMS;
+        LibraryItem item = items.get(i);
+        User holder = users.get(1 + rounds[i]++ % (holdCount / ITEMS));
+        holdService.itemReturned(item);
+        holdService.pickedUp(holder, item);
+        holdService.placeHold(holder, item.getId());
+        return holdService.getWaitingHoldCount();
+    }
+}
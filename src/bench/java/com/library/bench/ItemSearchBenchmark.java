@@ -0,0 +1,42 @@
+package com.library.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.library.domain.LibraryItem;
+import com.library.repository.InMemoryItemRepository;
+
+/** Catalog search latency for selective, broad and short queries. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ItemSearchBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int catalogSize;
+
+    @Param({"lantern orbit", "river", "12"})
+    public String query;
+
+    private InMemoryItemRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        repository = BenchmarkData.itemRepository(BenchmarkData.catalog(catalogSize));
+    }
+
+    @Benchmark
+    public List<LibraryItem> searchByTitle() {
+        return repository.searchByTitle(query);
+    }
+
+    @Benchmark
+    public List<LibraryItem> searchAllFields() {
+        return repository.search(query);
+    }
+}
@@ -0,0 +1,82 @@
+package com.library.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.library.domain.Book;
+import com.library.domain.LibraryItem;
+import com.library.domain.User;
+import com.library.repository.InMemoryLoanRepository;
+import com.library.service.LoanService;
+
+/**
+ * A patron with a few hundred loans checks out a stack of items and drops them back, item
+ * by item or as one batch. Each invocation borrows and returns the whole stack, so every
+ * invocation starts from the same state.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KioskCheckoutBenchmark {
+
+    @Param({"1", "15"})
+    public int stackSize;
+
+    private Path dir;
+    private LoanService loanService;
+    private User patron;
+    private List<LibraryItem> stack;
+    private List<String> stackIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = BenchmarkData.tempDir();
+        patron = new User("patron", "Kiosk Patron", "pass");
+        List<User> users = new ArrayList<>(BenchmarkData.users(99));
+        users.add(patron);
+        InMemoryLoanRepository repository = BenchmarkData.loanRepository(dir, BenchmarkData.catalog(30_000), users);
+        loanService = new LoanService(repository, new FixedTimeProvider(BenchmarkData.TODAY));
+        // The patron's existing loans are all on time, or borrowing would be refused.
+        repository.findActiveLoansByUser(patron).stream()
+            .filter(loan -> loan.isOverdue(BenchmarkData.TODAY.toEpochDay()))
+            .forEach(loan -> loanService.returnItem(loan.getItem().getId()));
+
+        stack = new ArrayList<>(stackSize);
+        stackIds = new ArrayList<>(stackSize);
+        for (int i = 0; i < stackSize; i++) {
+            LibraryItem item = new Book("kiosk-" + i, "Kiosk Copy " + i, "Author");
+            stack.add(item);
+            stackIds.add(item.getId());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public void oneByOne(Blackhole sink) {
+        for (LibraryItem item : stack) {
+            sink.consume(loanService.borrowItem(patron, item));
+        }
+        for (String id : stackIds) {
+            sink.consume(loanService.returnItem(id));
+        }
+    }
+
+    @Benchmark
+    public void batched(Blackhole sink) {
+        sink.consume(loanService.borrowItems(patron, stack));
+        sink.consume(loanService.returnItems(stackIds));
+    }
+}
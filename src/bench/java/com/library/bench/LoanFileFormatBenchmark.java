@@ -0,0 +1,78 @@
+package com.library.bench;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.library.domain.LibraryItem;
+import com.library.domain.Loan;
+import com.library.domain.User;
+import com.library.repository.InMemoryLoanRepository;
+import com.library.repository.LoanFileMigrator;
+
+/**
+ * Load time of the same loan history stored with Java serialization and in the compact
+ * snapshot format. File sizes are printed once per trial. {@code loadCompact} also builds
+ * the repository indexes, so it measures a full cold start rather than just decoding.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanFileFormatBenchmark {
+
+    @Param({"10000", "100000"})
+    public int loanCount;
+
+    private Path dir;
+    private File legacyFile;
+    private String compactFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = BenchmarkData.tempDir();
+        List<LibraryItem> items = BenchmarkData.catalog(loanCount);
+        List<User> users = BenchmarkData.users(loanCount / 10);
+
+        List<Loan> loans = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            loans.add(new Loan(items.get(i), users.get(i % users.size()), BenchmarkData.TODAY.minusDays(i % 30)));
+        }
+
+        legacyFile = dir.resolve("legacy.dat").toFile();
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(legacyFile)))) {
+            out.writeObject(loans);
+        }
+        Path compact = dir.resolve("compact.dat");
+        Files.copy(legacyFile.toPath(), compact);
+        LoanFileMigrator.migrate(compact.toString());
+        compactFile = compact.toString();
+
+        System.out.printf("%n%d loans: serialized %,d bytes, compact %,d bytes%n",
+            loanCount, legacyFile.length(), new File(compactFile).length());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public Object loadSerialized() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(legacyFile)))) {
+            return in.readObject();
+        }
+    }
+
+    @Benchmark
+    public List<Loan> loadCompact() {
+        return new InMemoryLoanRepository(compactFile).findAllActiveLoans();
+    }
+}
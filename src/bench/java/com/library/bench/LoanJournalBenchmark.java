@@ -0,0 +1,63 @@
+package com.library.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.library.domain.Book;
+import com.library.domain.Loan;
+import com.library.domain.User;
+import com.library.repository.InMemoryLoanRepository;
+
+/**
+ * Per-borrow latency of {@link InMemoryLoanRepository#save} against a growing loan history.
+ * With the append-only journal the mean should stay flat across history sizes; compactions
+ * show up only in the upper percentiles of the sample distribution.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanJournalBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int historySize;
+
+    private Path dir;
+    private InMemoryLoanRepository repository;
+    private User user;
+    private Book book;
+    private LocalDate borrowDate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = BenchmarkData.tempDir();
+        repository = new InMemoryLoanRepository(dir.resolve("loans.dat").toString());
+        user = new User("u1", "Bench User", "pass");
+        book = new Book("isbn-1", "Benchmarking Java", "Bench Author");
+        borrowDate = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < historySize; i++) {
+            Loan loan = new Loan(book, user, borrowDate);
+            repository.save(loan);
+            loan.returnItem();
+            repository.save(loan);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public Loan borrow() {
+        Loan loan = new Loan(book, user, borrowDate);
+        repository.save(loan);
+        return loan;
+    }
+}
@@ -0,0 +1,73 @@
+package com.library.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.library.domain.Book;
+import com.library.domain.LibraryItem;
+import com.library.domain.Loan;
+import com.library.domain.LoanSummary;
+import com.library.domain.User;
+import com.library.repository.InMemoryLoanRepository;
+
+/** Journaled saves, indexed per-user lookups and loan summaries against a populated loan repository. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanRepositoryBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int loanCount;
+
+    @Param({"1000"})
+    public int userCount;
+
+    private Path dir;
+    private InMemoryLoanRepository repository;
+    private List<User> users;
+    private Book extraItem;
+    private int nextUser;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = BenchmarkData.tempDir();
+        List<LibraryItem> items = BenchmarkData.catalog(loanCount);
+        users = BenchmarkData.users(userCount);
+        repository = BenchmarkData.loanRepository(dir, items, users);
+        extraItem = new Book("extra", "Extra Copy", "Author");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public Loan saveAndReturn() {
+        Loan loan = new Loan(extraItem, users.get(0), BenchmarkData.TODAY);
+        repository.save(loan);
+        loan.returnItem();
+        repository.save(loan);
+        return loan;
+    }
+
+    @Benchmark
+    public List<Loan> findActiveLoansByUser() {
+        nextUser = (nextUser + 1) % users.size();
+        return repository.findActiveLoansByUser(users.get(nextUser));
+    }
+
+    /** The borrow eligibility lookup; compare with the loan scan above that it replaces. */
+    @Benchmark
+    public LoanSummary getLoanSummary() {
+        nextUser = (nextUser + 1) % users.size();
+        return repository.getLoanSummary(users.get(nextUser));
+    }
+}
@@ -0,0 +1,72 @@
+package com.library.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.library.domain.Book;
+import com.library.domain.LibraryItem;
+import com.library.domain.User;
+import com.library.repository.InMemoryLoanRepository;
+import com.library.service.LoanService;
+
+/** Borrowing and the overdue report, listed or streamed, on top of the journaled loan repository. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanServiceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int loanCount;
+
+    private Path dir;
+    private InMemoryLoanRepository repository;
+    private LoanService loanService;
+    private User patron;
+    private Book item;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = BenchmarkData.tempDir();
+        List<LibraryItem> items = BenchmarkData.catalog(loanCount);
+        repository = BenchmarkData.loanRepository(dir, items, BenchmarkData.users(1000));
+        loanService = new LoanService(repository, new FixedTimeProvider(BenchmarkData.TODAY));
+        patron = new User("patron", "Patron Without Loans", "pass");
+        item = new Book("bench-item", "Benchmark Copy", "Author");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(dir);
+    }
+
+    /** One borrow followed by the return, so every invocation starts from the same state. */
+    @Benchmark
+    public String borrowItem() {
+        String result = loanService.borrowItem(patron, item);
+        repository.findActiveLoanByItem(item.getId()).ifPresent(loan -> {
+            loan.returnItem();
+            repository.save(loan);
+        });
+        item.tryReturn();
+        return result;
+    }
+
+    @Benchmark
+    public List<String> checkOverdueItems() {
+        return loanService.checkOverdueItems();
+    }
+
+    /** The streamed report the CLI prints from; compare with -prof gc to see the list copies it avoids. */
+    @Benchmark
+    public int reportOverdueItems(Blackhole sink) {
+        return loanService.reportOverdueItems(sink::consume);
+    }
+}
@@ -0,0 +1,74 @@
+package com.library.bench;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.library.domain.LibraryItem;
+import com.library.domain.Loan;
+import com.library.service.TimeProvider;
+
+/**
+ * Per-loan cost of deciding whether a loan is overdue and by how many days. Each invocation
+ * evaluates {@link #LOAN_COUNT} loans, so with {@code -prof gc} the {@code gc.alloc.rate.norm}
+ * column reads as bytes allocated per evaluated loan: the epoch-day path should report 0.
+ * {@code localDates} repeats the earlier {@code LocalDate}/{@code ChronoUnit} evaluation
+ * for comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OverdueEvaluationBenchmark {
+
+    static final int LOAN_COUNT = 100_000;
+
+    private List<Loan> loans;
+    private TimeProvider timeProvider;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<LibraryItem> items = BenchmarkData.catalog(LOAN_COUNT);
+        loans = new ArrayList<>(LOAN_COUNT);
+        for (int i = 0; i < LOAN_COUNT; i++) {
+            LibraryItem item = items.get(i);
+            int daysAgo = i % 10 == 0 ? item.getLoanPeriodDays() + 1 + i % 30 : i % item.getLoanPeriodDays();
+            loans.add(new Loan(item, null, BenchmarkData.TODAY.minusDays(daysAgo)));
+        }
+        timeProvider = new FixedTimeProvider(BenchmarkData.TODAY);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOAN_COUNT)
+    public long epochDays() {
+        long today = timeProvider.getEpochDay();
+        long daysLate = 0;
+        for (int i = 0; i < loans.size(); i++) {
+            Loan loan = loans.get(i);
+            if (loan.isOverdue(today)) {
+                daysLate += loan.daysOverdue(today);
+            }
+        }
+        return daysLate;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOAN_COUNT)
+    public long localDates() {
+        long daysLate = 0;
+        for (int i = 0; i < loans.size(); i++) {
+            Loan loan = loans.get(i);
+            LocalDate today = timeProvider.getDate();
+            if (loan.isActive() && today.isAfter(loan.getDueDate())) {
+                daysLate += ChronoUnit.DAYS.between(loan.getDueDate(), timeProvider.getDate());
+            }
+        }
+        return daysLate;
+    }
+}
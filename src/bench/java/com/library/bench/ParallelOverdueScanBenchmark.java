@@ -0,0 +1,72 @@
+package com.library.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.library.repository.InMemoryLoanRepository;
+import com.library.service.LoanService;
+import com.library.service.ReminderService;
+
+/**
+ * End-of-day overdue processing with the fork-join scan at different pool sizes.
+ * {@code parallelism} 0 is the sequential scan. Scaling only shows up to the number of
+ * cores the machine has, so record it alongside the results.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelOverdueScanBenchmark {
+
+    @Param({"1000000"})
+    public int loanCount;
+
+    @Param({"0", "1", "2", "4", "8", "16"})
+    public int parallelism;
+
+    @Param({"true", "false"})
+    public boolean ordered;
+
+    private Path dir;
+    private LoanService loanService;
+    private ReminderService reminderService;
+    private Blackhole sink;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) throws IOException {
+        dir = BenchmarkData.tempDir();
+        sink = blackhole;
+        InMemoryLoanRepository repository = BenchmarkData.loanRepository(dir, BenchmarkData.catalog(loanCount),
+            BenchmarkData.users(1000));
+        FixedTimeProvider clock = new FixedTimeProvider(BenchmarkData.TODAY);
+        loanService = new LoanService(repository, clock);
+        reminderService = new ReminderService(repository, clock);
+        reminderService.registerObserver((user, message) -> sink.consume(message));
+        if (parallelism > 0) {
+            loanService.enableParallelScan(parallelism, ordered);
+            reminderService.enableParallelScan(parallelism, ordered);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public List<String> checkOverdueItems() {
+        return loanService.checkOverdueItems();
+    }
+
+    @Benchmark
+    public void sendOverdueReminders() {
+        reminderService.sendOverdueReminders();
+    }
+}
@@ -0,0 +1,55 @@
+package com.library.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.library.service.ReminderService;
+
+/**
+ * Overdue reminder runs with an observer that only consumes the message, so the numbers
+ * reflect the scan and message building rather than delivery.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReminderServiceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int loanCount;
+
+    private Path dir;
+    private ReminderService reminderService;
+    private Blackhole sink;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) throws IOException {
+        dir = BenchmarkData.tempDir();
+        sink = blackhole;
+        reminderService = new ReminderService(
+            BenchmarkData.loanRepository(dir, BenchmarkData.catalog(loanCount), BenchmarkData.users(1000)),
+            new FixedTimeProvider(BenchmarkData.TODAY));
+        reminderService.registerObserver((user, message) -> sink.consume(message));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public void sendOverdueReminders() {
+        reminderService.sendOverdueReminders();
+    }
+
+    @Benchmark
+    public void sendOverdueDigests() {
+        reminderService.sendOverdueDigests();
+    }
+}
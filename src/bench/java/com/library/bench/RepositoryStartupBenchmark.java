@@ -0,0 +1,84 @@
+package com.library.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.library.domain.LibraryItem;
+import com.library.domain.User;
+import com.library.repository.FileItemRepository;
+import com.library.repository.FileUserRepository;
+
+/**
+ * Cold start of the file-backed repositories with 1M items and 200k users, compared with
+ * re-importing the same catalog into {@link com.library.repository.InMemoryItemRepository}.
+ * {@code firstSearch} shows the one-off cost of building the search index lazily.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class RepositoryStartupBenchmark {
+
+    @Param({"1000000"})
+    public int itemCount;
+
+    @Param({"200000"})
+    public int userCount;
+
+    private Path dir;
+    private String itemFile;
+    private String userFile;
+    private List<LibraryItem> catalog;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = BenchmarkData.tempDir();
+        itemFile = dir.resolve("items.dat").toString();
+        userFile = dir.resolve("users.dat").toString();
+        catalog = BenchmarkData.catalog(itemCount);
+        try (FileItemRepository items = new FileItemRepository(itemFile)) {
+            catalog.forEach(items::save);
+        }
+        try (FileUserRepository users = new FileUserRepository(userFile)) {
+            BenchmarkData.users(userCount).forEach(users::save);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public Optional<LibraryItem> openItems() throws IOException {
+        try (FileItemRepository items = new FileItemRepository(itemFile)) {
+            return items.findById("isbn-" + (itemCount - 1));
+        }
+    }
+
+    @Benchmark
+    public Optional<User> openUsers() throws IOException {
+        try (FileUserRepository users = new FileUserRepository(userFile)) {
+            return users.findById("user-" + (userCount - 1));
+        }
+    }
+
+    @Benchmark
+    public List<LibraryItem> firstSearch() throws IOException {
+        try (FileItemRepository items = new FileItemRepository(itemFile)) {
+            return items.search("river");
+        }
+    }
+
+    @Benchmark
+    public Object reimportInMemory() {
+        return BenchmarkData.itemRepository(catalog);
+    }
+}
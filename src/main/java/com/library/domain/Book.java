@@ -15,6 +15,9 @@ public class Book extends LibraryItem {
 
     public String getAuthor() { return author; }
 
+    @Override
+    public String getCreator() { return author; }
+
     @Override
     public int getLoanPeriodDays() {
         return BOOK_LOAN_PERIOD_DAYS;
@@ -15,6 +15,9 @@ public class CD extends LibraryItem {
 
     public String getArtist() { return artist; }
 
+    @Override
+    public String getCreator() { return artist; }
+
     @Override
     public int getLoanPeriodDays() {
         return CD_LOAN_PERIOD_DAYS;
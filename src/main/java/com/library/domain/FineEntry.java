@@ -0,0 +1,45 @@
+package com.library.domain;
+
+/**
+ * One line of a user's fine statement: either the fine a loan accrued over a range of
+ * overdue days, or a payment, which is stored as a negative amount.
+ */
+public final class FineEntry {
+    private final String userId;
+    private final String itemId;
+    private final long fromEpochDay;
+    private final long throughEpochDay;
+    private final Money amount;
+
+    public FineEntry(String userId, String itemId, long fromEpochDay, long throughEpochDay, Money amount) {
+        this.userId = userId;
+        this.itemId = itemId;
+        this.fromEpochDay = fromEpochDay;
+        this.throughEpochDay = throughEpochDay;
+        this.amount = amount;
+    }
+
+    /** The fine for days after {@code fromEpochDay} up to and including {@code throughEpochDay}. */
+    public static FineEntry accrual(Loan loan, long fromEpochDay, long throughEpochDay, Money amount) {
+        return new FineEntry(loan.getUser().getId(), loan.getItem().getId(), fromEpochDay, throughEpochDay, amount);
+    }
+
+    public static FineEntry payment(User user, long epochDay, Money amount) {
+        return new FineEntry(user.getId(), null, epochDay, epochDay, amount.negate());
+    }
+
+    public String getUserId() { return userId; }
+    /** The item the fine was accrued for, or {@code null} for a payment. */
+    public String getItemId() { return itemId; }
+    public long getFromEpochDay() { return fromEpochDay; }
+    public long getThroughEpochDay() { return throughEpochDay; }
+    public Money getAmount() { return amount; }
+    public boolean isPayment() { return itemId == null; }
+
+    @Override
+    public String toString() {
+        return isPayment()
+            ? "Payment " + amount.negate()
+            : "Fine " + amount + " for " + itemId + " (" + (throughEpochDay - fromEpochDay) + " day(s))";
+    }
+}
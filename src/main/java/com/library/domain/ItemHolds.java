@@ -0,0 +1,33 @@
+package com.library.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The holds on one item as they are stored: the users waiting for it in queue order, and
+ * the user it has been set aside for, if any, with the last day they may pick it up.
+ */
+public final class ItemHolds {
+    private final String itemId;
+    private final List<String> waitingUserIds;
+    private final String readyUserId;
+    private final long pickupByEpochDay;
+
+    public ItemHolds(String itemId, List<String> waitingUserIds, String readyUserId, long pickupByEpochDay) {
+        this.itemId = itemId;
+        this.waitingUserIds = Collections.unmodifiableList(new ArrayList<>(waitingUserIds));
+        this.readyUserId = readyUserId;
+        this.pickupByEpochDay = pickupByEpochDay;
+    }
+
+    public String getItemId() { return itemId; }
+    public List<String> getWaitingUserIds() { return waitingUserIds; }
+    /** The user the item is set aside for, or {@code null} if it is not set aside. */
+    public String getReadyUserId() { return readyUserId; }
+    public long getPickupByEpochDay() { return pickupByEpochDay; }
+
+    public boolean isEmpty() {
+        return waitingUserIds.isEmpty() && readyUserId == null;
+    }
+}
@@ -1,27 +1,76 @@
 package com.library.domain;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import com.library.strategy.FineStrategy;
 
 public abstract class LibraryItem implements Serializable {
     private static final long serialVersionUID = 1L;
+
+    private static final AtomicLongFieldUpdater<LibraryItem> BORROW_STATE =
+            AtomicLongFieldUpdater.newUpdater(LibraryItem.class, "borrowState");
+    private static final long BORROWED_BIT = 1L;
+    private static final long VERSION_STEP = 2L;
     
     protected String id;
     protected String title;
-    protected boolean isBorrowed;
     protected FineStrategy fineStrategy;
 
+    // Lowest bit: borrowed flag. Remaining bits: version, bumped on every change so callers
+    // can detect that the item was borrowed and returned in between two reads.
+    private volatile long borrowState;
+
     protected LibraryItem(String id, String title, FineStrategy fineStrategy) {
         this.id = id;
         this.title = title;
         this.fineStrategy = fineStrategy;
-        this.isBorrowed = false;
+        this.borrowState = 0L;
     }
 
     public String getId() { return id; }
     public String getTitle() { return title; }
-    public boolean isBorrowed() { return isBorrowed; }
-    public void setBorrowed(boolean borrowed) { isBorrowed = borrowed; }
+    public boolean isBorrowed() { return (borrowState & BORROWED_BIT) != 0; }
+    public long getVersion() { return borrowState >>> 1; }
+
+    public void setBorrowed(boolean borrowed) {
+        long current;
+        do {
+            current = borrowState;
+        } while (!BORROW_STATE.compareAndSet(this, current, next(current, borrowed)));
+    }
+
+    /** Atomically marks the item as borrowed. Returns false if it already was. */
+    public boolean tryBorrow() {
+        return transition(false, true);
+    }
+
+    /** Atomically marks the item as available. Returns false if it was not borrowed. */
+    public boolean tryReturn() {
+        return transition(true, false);
+    }
+
+    /**
+     * Sets the borrowed flag only if no other change happened since {@code expectedVersion}
+     * was read with {@link #getVersion()}.
+     */
+    public boolean compareAndSetBorrowed(long expectedVersion, boolean borrowed) {
+        long current = borrowState;
+        return (current >>> 1) == expectedVersion
+                && BORROW_STATE.compareAndSet(this, current, next(current, borrowed));
+    }
+
+    private boolean transition(boolean from, boolean to) {
+        long current;
+        do {
+            current = borrowState;
+            if (((current & BORROWED_BIT) != 0) != from) return false;
+        } while (!BORROW_STATE.compareAndSet(this, current, next(current, to)));
+        return true;
+    }
+
+    private static long next(long current, boolean borrowed) {
+        return ((current & ~BORROWED_BIT) + VERSION_STEP) | (borrowed ? BORROWED_BIT : 0L);
+    }
 
     public double calculateFine(long overdueDays) {
         return fineStrategy.calculateFine(overdueDays);
@@ -29,8 +78,11 @@ public abstract class LibraryItem implements Serializable {
 
     public abstract int getLoanPeriodDays();
 
+    /** The author of a book or the artist of a CD. */
+    public abstract String getCreator();
+
     @Override
     public String toString() {
         return String.format("[%s] %s (ID: %s)", this.getClass().getSimpleName(), title, id);
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,7 @@
 package com.library.domain;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.LocalDate;
 
@@ -10,19 +12,24 @@ public class Loan implements Serializable {
     private User user;
     private LocalDate borrowDate;
     private LocalDate dueDate;
-    private boolean isActive;
+    // Cached so overdue checks compare two longs instead of allocating or walking LocalDate.
+    private transient long dueEpochDay;
+    private volatile boolean isActive;
 
     public Loan(LibraryItem item, User user, LocalDate borrowDate) {
         this.item = item;
         this.user = user;
         this.borrowDate = borrowDate;
         this.dueDate = borrowDate.plusDays(item.getLoanPeriodDays());
+        this.dueEpochDay = dueDate.toEpochDay();
         this.isActive = true;
     }
 
     public LibraryItem getItem() { return item; }
     public User getUser() { return user; }
+    public LocalDate getBorrowDate() { return borrowDate; }
     public LocalDate getDueDate() { return dueDate; }
+    public long getDueEpochDay() { return dueEpochDay; }
     public boolean isActive() { return isActive; }
 
     public void returnItem() {
@@ -30,6 +37,20 @@ public class Loan implements Serializable {
     }
 
     public boolean isOverdue(LocalDate currentDate) {
-        return isActive && currentDate.isAfter(dueDate);
+        return isOverdue(currentDate.toEpochDay());
     }
-}
\ No newline at end of file
+
+    public boolean isOverdue(long currentEpochDay) {
+        return isActive && currentEpochDay > dueEpochDay;
+    }
+
+    /** Days past the due date on {@code currentEpochDay}, or 0 if the loan is not late yet. */
+    public long daysOverdue(long currentEpochDay) {
+        return Math.max(0, currentEpochDay - dueEpochDay);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        dueEpochDay = dueDate.toEpochDay();
+    }
+}
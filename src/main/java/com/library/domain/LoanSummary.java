@@ -0,0 +1,37 @@
+package com.library.domain;
+
+/**
+ * How many active loans a user has and when the first of them is due. The due day is kept
+ * rather than an overdue flag, so the summary stays correct when the date rolls over.
+ */
+public final class LoanSummary {
+    public static final LoanSummary NONE = new LoanSummary(0, Long.MAX_VALUE);
+
+    private final int activeLoans;
+    private final long earliestDueEpochDay;
+
+    private LoanSummary(int activeLoans, long earliestDueEpochDay) {
+        this.activeLoans = activeLoans;
+        this.earliestDueEpochDay = earliestDueEpochDay;
+    }
+
+    public static LoanSummary of(int activeLoans, long earliestDueEpochDay) {
+        return activeLoans == 0 ? NONE : new LoanSummary(activeLoans, earliestDueEpochDay);
+    }
+
+    public int getActiveLoans() { return activeLoans; }
+    public boolean hasActiveLoans() { return activeLoans > 0; }
+
+    /** The due day of the earliest active loan, or {@code Long.MAX_VALUE} without any. */
+    public long getEarliestDueEpochDay() { return earliestDueEpochDay; }
+
+    /** Whether any active loan is overdue on {@code currentEpochDay}, as {@link Loan#isOverdue(long)} decides. */
+    public boolean hasOverdue(long currentEpochDay) {
+        return currentEpochDay > earliestDueEpochDay;
+    }
+
+    @Override
+    public String toString() {
+        return activeLoans + " active loan(s)" + (activeLoans == 0 ? "" : ", first due on epoch day " + earliestDueEpochDay);
+    }
+}
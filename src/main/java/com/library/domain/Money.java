@@ -0,0 +1,77 @@
+package com.library.domain;
+
+import java.io.Serializable;
+
+/**
+ * An amount of money as a whole number of minor units (cents), so sums and differences are
+ * exact. Fine strategies and the file formats still use {@code double}; {@link #of(double)}
+ * rounds such an amount half-up to the nearest cent, and any amount that came from
+ * {@link #toDouble()} converts back to exactly the same number of cents.
+ */
+public final class Money implements Comparable<Money>, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int MINOR_PER_MAJOR = 100;
+
+    public static final Money ZERO = new Money(0);
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    public static Money ofMinorUnits(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    public static Money of(double amount) {
+        return ofMinorUnits(toMinorUnits(amount));
+    }
+
+    public static long toMinorUnits(double amount) {
+        return Math.round(amount * MINOR_PER_MAJOR);
+    }
+
+    public static double toDouble(long minorUnits) {
+        return (double) minorUnits / MINOR_PER_MAJOR;
+    }
+
+    public long getMinorUnits() { return minorUnits; }
+    public double toDouble() { return toDouble(minorUnits); }
+    public boolean isPositive() { return minorUnits > 0; }
+
+    public Money plus(Money other) {
+        return ofMinorUnits(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return ofMinorUnits(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money negate() {
+        return ofMinorUnits(Math.negateExact(minorUnits));
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).minorUnits == minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    /** Two decimals, e.g. {@code 12.50} or {@code -0.05}. */
+    @Override
+    public String toString() {
+        long abs = Math.abs(minorUnits);
+        long fraction = abs % MINOR_PER_MAJOR;
+        return (minorUnits < 0 ? "-" : "") + abs / MINOR_PER_MAJOR + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+}
@@ -1,30 +1,75 @@
 package com.library.domain;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.io.Serializable;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
-public class User {
+public class User implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // The serialized form still carries the balance as a double, so loan files written
+    // before fines were kept in minor units can be read, and vice versa.
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("id", String.class),
+        new ObjectStreamField("name", String.class),
+        new ObjectStreamField("password", String.class),
+        new ObjectStreamField("finesOwed", double.class)
+    };
+
+    private static final AtomicLongFieldUpdater<User> FINES =
+            AtomicLongFieldUpdater.newUpdater(User.class, "finesOwedMinorUnits");
     
     private String id;
     private String name;
     private String password;
-    private double finesOwed;
+    // Updated only with single atomic operations, so concurrent accruals and payments
+    // are never lost and never need a lock.
+    private volatile long finesOwedMinorUnits;
 
     public User(String id, String name, String password) {
         this.id = id;
         this.name = name;
         this.password = password;
-        this.finesOwed = 0.0;
     }
 
     public String getId() { return id; }
     public String getName() { return name; }
     public String getPassword() { return password; }
-    public double getFinesOwed() { return finesOwed; }
-    public void setFinesOwed(double finesOwed) { this.finesOwed = finesOwed; }
+    public double getFinesOwed() { return Money.toDouble(finesOwedMinorUnits); }
+    public Money getFineBalance() { return Money.ofMinorUnits(finesOwedMinorUnits); }
+
+    /** Replaces the balance, e.g. when loading a user. Use {@link #addFine} and {@link #payFine} for changes. */
+    public void setFinesOwed(double finesOwed) { this.finesOwedMinorUnits = Money.toMinorUnits(finesOwed); }
+
+    public void addFine(Money amount) {
+        FINES.getAndAdd(this, amount.getMinorUnits());
+    }
+
+    /**
+     * Takes up to {@code amount} off the balance in one compare-and-set and returns what was
+     * actually taken: the whole amount, the rest of a smaller balance, or zero if nothing is
+     * owed. A payment never takes the balance below zero.
+     */
+    public Money payFine(Money amount) {
+        long requested = amount.getMinorUnits();
+        if (requested <= 0) return Money.ZERO;
+        long current;
+        long paid;
+        do {
+            current = finesOwedMinorUnits;
+            paid = Math.min(current, requested);
+            if (paid <= 0) return Money.ZERO;
+        } while (!FINES.compareAndSet(this, current, current - paid));
+        return Money.ofMinorUnits(paid);
+    }
 
     @Override
     public String toString() {
-        return "User [ID=" + id + ", Name=" + name + ", Fines=" + finesOwed + "]";
+        return "User [ID=" + id + ", Name=" + name + ", Fines=" + getFineBalance() + "]";
     }
 
     @Override
@@ -39,4 +84,21 @@ public class User {
     public int hashCode() {
         return Objects.hash(id);
     }
-}
\ No newline at end of file
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", id);
+        fields.put("name", name);
+        fields.put("password", password);
+        fields.put("finesOwed", getFinesOwed());
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        id = (String) fields.get("id", null);
+        name = (String) fields.get("name", null);
+        password = (String) fields.get("password", null);
+        finesOwedMinorUnits = Money.toMinorUnits(fields.get("finesOwed", 0.0));
+    }
+}
@@ -0,0 +1,75 @@
+package com.library.metrics;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Named counters, gauges and latency histograms.
+ * <p>
+ * Metrics are created on first use and live as long as the registry. Components look them
+ * up once, keep the reference and update it directly, so the hot path is a single atomic
+ * operation. {@link #getDefault()} is the registry shared by the running application.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    /** Registers a gauge read at snapshot time. A later registration under the same name wins. */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, () -> OptionalLong.of(value.getAsLong()));
+    }
+
+    /**
+     * Registers a gauge read from {@code owner}, which the registry holds only weakly: a
+     * repository or service registered on the shared registry can still be collected, and
+     * its gauge disappears with it. {@code value} must not capture the owner itself.
+     */
+    public <T> void gauge(String name, T owner, ToLongFunction<? super T> value) {
+        WeakReference<T> ref = new WeakReference<>(owner);
+        gauges.put(name, () -> {
+            T current = ref.get();
+            return current == null ? OptionalLong.empty() : OptionalLong.of(value.applyAsLong(current));
+        });
+    }
+
+    public MetricsSnapshot snapshot() {
+        Map<String, Long> counterValues = new TreeMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.get()));
+        Map<String, Long> gaugeValues = new TreeMap<>();
+        gauges.forEach((name, gauge) -> {
+            OptionalLong value = gauge.read();
+            if (value.isPresent()) {
+                gaugeValues.put(name, value.getAsLong());
+            } else {
+                gauges.remove(name, gauge);
+            }
+        });
+        Map<String, HistogramSnapshot> histogramValues = new TreeMap<>();
+        histograms.forEach((name, histogram) -> histogramValues.put(name, histogram.snapshot()));
+        return new MetricsSnapshot(counterValues, gaugeValues, histogramValues);
+    }
+
+    private interface Gauge {
+        OptionalLong read();
+    }
+}
@@ -0,0 +1,83 @@
+package com.library.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/** Values of every metric in a registry at one point in time, with text and JSON export. */
+public class MetricsSnapshot {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final Map<String, Long> counters;
+    private final Map<String, Long> gauges;
+    private final Map<String, HistogramSnapshot> histograms;
+
+    MetricsSnapshot(Map<String, Long> counters, Map<String, Long> gauges, Map<String, HistogramSnapshot> histograms) {
+        this.counters = Collections.unmodifiableMap(counters);
+        this.gauges = Collections.unmodifiableMap(gauges);
+        this.histograms = Collections.unmodifiableMap(histograms);
+    }
+
+    public Map<String, Long> getCounters() { return counters; }
+    public Map<String, Long> getGauges() { return gauges; }
+    public Map<String, HistogramSnapshot> getHistograms() { return histograms; }
+
+    /** One metric per line; latencies in milliseconds. */
+    public String toText() {
+        StringBuilder out = new StringBuilder();
+        counters.forEach((name, value) -> out.append("counter ").append(name).append(' ').append(value).append('\n'));
+        gauges.forEach((name, value) -> out.append("gauge ").append(name).append(' ').append(value).append('\n'));
+        histograms.forEach((name, h) -> out.append(String.format(
+            "timer %s count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms%n",
+            name, h.getCount(), millis(h.getMean()), millis(h.getP50()), millis(h.getP90()),
+            millis(h.getP99()), millis(h.getMax()))));
+        return out.toString();
+    }
+
+    /** A single JSON object; latencies in nanoseconds. */
+    public String toJson() {
+        StringBuilder out = new StringBuilder("{\"counters\":{");
+        appendValues(out, counters);
+        out.append("},\"gauges\":{");
+        appendValues(out, gauges);
+        out.append("},\"timers\":{");
+        boolean first = true;
+        for (Map.Entry<String, HistogramSnapshot> entry : histograms.entrySet()) {
+            HistogramSnapshot h = entry.getValue();
+            if (!first) out.append(',');
+            first = false;
+            appendName(out, entry.getKey());
+            out.append("{\"count\":").append(h.getCount())
+               .append(",\"meanNanos\":").append(h.getMean())
+               .append(",\"p50Nanos\":").append(h.getP50())
+               .append(",\"p90Nanos\":").append(h.getP90())
+               .append(",\"p99Nanos\":").append(h.getP99())
+               .append(",\"maxNanos\":").append(h.getMax())
+               .append('}');
+        }
+        return out.append("}}").toString();
+    }
+
+    private static void appendValues(StringBuilder out, Map<String, Long> values) {
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            if (!first) out.append(',');
+            first = false;
+            appendName(out, entry.getKey());
+            out.append(entry.getValue());
+        }
+    }
+
+    private static void appendName(StringBuilder out, String name) {
+        out.append('"');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"' || c == '\\') out.append('\\');
+            out.append(c);
+        }
+        out.append("\":");
+    }
+
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+}
@@ -1,10 +1,18 @@
 package com.library.presentation;
 
+import java.time.Clock;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import com.library.domain.*;
+import com.library.metrics.MetricsRegistry;
+import com.library.metrics.MetricsSnapshot;
 import com.library.repository.*;
 import com.library.service.*;
 
@@ -13,23 +21,40 @@ public class LibraryCLI {
     private static final Logger LOGGER = Logger.getLogger(LibraryCLI.class.getName());
     private static final String CHOICE_PROMPT = "Choice: ";
     private static final String INVALID_CHOICE_MSG = "Invalid choice.";
+    private static final int NOTIFICATION_WORKERS = 4;
+    private static final int NOTIFICATION_QUEUE_CAPACITY = 1024;
+    private static final int NOTIFICATION_BATCH_SIZE = 32;
+    private static final long NOTIFICATION_TIMEOUT_SECONDS = 30;
+    private static final long SCHEDULER_TICK_MINUTES = 1;
 
-    private static final ItemRepository itemRepo = new InMemoryItemRepository();
-    private static final UserRepository userRepo = new InMemoryUserRepository();
-    private static final LoanRepository loanRepo = new InMemoryLoanRepository();
+    private static final ItemRepository itemRepo = new FileItemRepository();
+    private static final UserRepository userRepo = new FileUserRepository();
+    private static final LoanRepository loanRepo = new InMemoryLoanRepository(itemRepo, userRepo);
 
     private static final AuthService authService = new AuthService();
-    private static final FineService fineService = new FineService();
     private static final TimeProvider timeProvider = new SystemTimeProvider();
+    private static final FineLedger fineLedger =
+        new FineLedger(loanRepo, userRepo, new FileFineLedgerRepository(), timeProvider);
+    private static final FineService fineService = new FineService(fineLedger);
     
-    private static final LoanService loanService = new LoanService(loanRepo, timeProvider);
+    private static final LoanService loanService = new LoanService(loanRepo, timeProvider, fineLedger);
     private static final UserService userService = new UserService(userRepo, loanRepo);
     private static final ReminderService reminderService = new ReminderService(loanRepo, timeProvider);
+    private static final HoldService holdService =
+        new HoldService(itemRepo, loanRepo, userRepo, new FileHoldRepository(), timeProvider);
+    private static final MaintenanceScheduler scheduler =
+        new MaintenanceScheduler(Clock.systemDefaultZone(), new FileJobStateRepository());
 
     private static final EmailNotifier emailNotifier = new EmailNotifier();
 
     static {
         reminderService.registerObserver(emailNotifier);
+        holdService.registerObserver(emailNotifier);
+        loanService.enableHolds(holdService);
+        scheduler.schedule("fines", LocalTime.of(0, 5), lastRun -> fineLedger.accrue());
+        scheduler.schedule("holds", LocalTime.of(0, 10), lastRun -> holdService.expireHolds());
+        scheduler.schedule("reminders", LocalTime.of(8, 0), reminderService::sendNewlyOverdueDigests);
+        reminderService.enableAsyncDispatch(NOTIFICATION_WORKERS, NOTIFICATION_QUEUE_CAPACITY, NOTIFICATION_BATCH_SIZE);
     }
 
     private static final Scanner scanner = new Scanner(System.in);
@@ -41,8 +66,18 @@ public class LibraryCLI {
 
     public static void main(String[] args) {
         LOGGER.info("=== Library Management System ===");
+        // Charges any days that passed while the system was not running before anyone can
+        // borrow; the scheduler catches up on the other jobs one tick after startup.
+        fineLedger.accrue();
+        scheduler.start(SCHEDULER_TICK_MINUTES, TimeUnit.MINUTES);
         runMainMenu();
         scanner.close();
+        try {
+            scheduler.shutdown(NOTIFICATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            reminderService.shutdown(NOTIFICATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     private static void runMainMenu() {
@@ -138,6 +173,12 @@ public class LibraryCLI {
         LOGGER.info("4. Send Reminders");
         LOGGER.info("5. Unregister User");
         LOGGER.info("6. Logout");
+        LOGGER.info("7. View Metrics");
+        LOGGER.info("8. Accrue Fines");
+        LOGGER.info("9. Return Item");
+        LOGGER.info("10. Empty Drop Box");
+        LOGGER.info("11. Expire Holds");
+        LOGGER.info("12. Run Due Scheduled Jobs");
         printPrompt(CHOICE_PROMPT);
 
         switch (scanner.nextLine()) {
@@ -156,13 +197,12 @@ public class LibraryCLI {
                 LOGGER.info("CD added.");
                 break;
             case "3":
-                List<String> overdues = loanService.checkOverdueItems();
-                if (overdues.isEmpty()) LOGGER.info("No items overdue.");
-                else overdues.forEach(LOGGER::info);
+                if (loanService.reportOverdueItems(LOGGER::info) == 0) LOGGER.info("No items overdue.");
                 break;
             case "4":
                 LOGGER.info("Sending reminders...");
-                reminderService.sendOverdueReminders();
+                reminderService.sendOverdueDigests();
+                awaitReminderDelivery();
                 break;
             case "5":
                 printPrompt("User ID to remove: ");
@@ -171,30 +211,82 @@ public class LibraryCLI {
             case "6":
                 authService.logout();
                 break;
+            case "7":
+                printPrompt("Format (text/json): ");
+                MetricsSnapshot snapshot = MetricsRegistry.getDefault().snapshot();
+                LOGGER.info("json".equalsIgnoreCase(scanner.nextLine().trim()) ? snapshot.toJson() : snapshot.toText());
+                break;
+            case "8":
+                int charged = fineLedger.accrue();
+                LOGGER.info(() -> charged + " fine(s) charged.");
+                break;
+            case "9":
+                printPrompt("Item ID to return: ");
+                LOGGER.info(loanService.returnItem(scanner.nextLine().trim()));
+                break;
+            case "10":
+                printPrompt("Scan item IDs, blank line to finish: ");
+                List<String> scanned = new ArrayList<>();
+                for (String id = scanner.nextLine().trim(); !id.isEmpty(); id = scanner.nextLine().trim()) {
+                    scanned.add(id);
+                }
+                List<String> returned = loanService.returnItems(scanned);
+                for (int i = 0; i < scanned.size(); i++) {
+                    LOGGER.info(scanned.get(i) + ": " + returned.get(i));
+                }
+                break;
+            case "11":
+                int expired = holdService.expireHolds();
+                LOGGER.info(() -> expired + " hold(s) expired.");
+                break;
+            case "12":
+                int ran = scheduler.runDueJobs();
+                LOGGER.info(() -> ran + " job(s) run.");
+                break;
             default:
                 LOGGER.warning(INVALID_CHOICE_MSG);
         }
     }
 
+    private static void awaitReminderDelivery() {
+        try {
+            if (reminderService.awaitDelivery(NOTIFICATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.info("All reminders delivered.");
+            } else {
+                LOGGER.warning("Reminders are still being delivered in the background.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private static void handleUserMenu() {
         LOGGER.info(() -> "\n--- User Menu (" + currentUser.getName() + ") ---");
         LOGGER.info("1. Search Item (US1.4)");
         LOGGER.info("2. Borrow Item");
         LOGGER.info("3. Pay Fine");
         LOGGER.info("4. Logout");
+        LOGGER.info("5. Borrow Several Items");
+        LOGGER.info("6. Place Hold");
+        LOGGER.info("7. Cancel Hold");
         printPrompt(CHOICE_PROMPT);
 
         switch (scanner.nextLine()) {
             case "1":
                 printPrompt("Enter search term (Title/Author/ID): ");
                 String query = scanner.nextLine();
-                List<LibraryItem> results = itemRepo.searchByTitle(query); 
+                int found = 0;
+                try (Stream<LibraryItem> results = itemRepo.streamSearch(query)) {
+                    for (Iterator<LibraryItem> it = results.iterator(); it.hasNext(); found++) {
+                        LOGGER.info(it.next()::toString);
+                    }
+                }
                 
-                if (results.isEmpty()) {
+                int total = found;
+                if (total == 0) {
                     LOGGER.info(() -> "No items found matching '" + query + "'.");
                 } else {
-                    LOGGER.info(() -> "Found " + results.size() + " item(s):");
-                    results.forEach(item -> LOGGER.info(item::toString));
+                    LOGGER.info(() -> "Found " + total + " item(s).");
                 }
                 break;
             case "2":
@@ -205,13 +297,15 @@ public class LibraryCLI {
                 );
                 break;
             case "3":
-                LOGGER.info(() -> "Current Fines: " + currentUser.getFinesOwed());
-                if (currentUser.getFinesOwed() > 0) {
+                fineLedger.getStatement(currentUser).forEach(entry -> LOGGER.info(entry::toString));
+                LOGGER.info(() -> "Current Fines: " + fineService.getOutstandingBalance(currentUser));
+                if (fineService.getOutstandingBalance(currentUser).isPositive()) {
                     printPrompt("Amount to pay: ");
                     try {
                         double amount = Double.parseDouble(scanner.nextLine());
                         if (fineService.payFine(currentUser, amount)) {
-                            LOGGER.info(() -> "Payment accepted. New Balance: " + currentUser.getFinesOwed());
+                            userRepo.save(currentUser);
+                            LOGGER.info(() -> "Payment accepted. New Balance: " + fineService.getOutstandingBalance(currentUser));
                         } else {
                             LOGGER.warning("Payment failed (Invalid amount).");
                         }
@@ -223,6 +317,24 @@ public class LibraryCLI {
             case "4":
                 currentUser = null;
                 break;
+            case "5":
+                printPrompt("Scan item IDs, blank line to finish: ");
+                List<LibraryItem> stack = new ArrayList<>();
+                for (String id = scanner.nextLine().trim(); !id.isEmpty(); id = scanner.nextLine().trim()) {
+                    String scannedId = id;
+                    itemRepo.findById(id).ifPresentOrElse(stack::add,
+                        () -> LOGGER.warning(() -> scannedId + ": Item not found."));
+                }
+                loanService.borrowItems(currentUser, stack).forEach(LOGGER::info);
+                break;
+            case "6":
+                printPrompt("Enter Item ID to hold: ");
+                LOGGER.info(holdService.placeHold(currentUser, scanner.nextLine().trim()));
+                break;
+            case "7":
+                printPrompt("Enter Item ID: ");
+                LOGGER.info(holdService.cancelHold(currentUser, scanner.nextLine().trim()));
+                break;
             default:
                 LOGGER.warning(INVALID_CHOICE_MSG);
         }
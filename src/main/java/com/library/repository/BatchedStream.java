@@ -0,0 +1,43 @@
+package com.library.repository;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A sequential stream that pulls its elements from a repository a batch at a time. Each
+ * call to {@code nextBatch} is expected to take the repository's lock, copy out the next
+ * batch and remember where it stopped, so no lock is held while the caller consumes
+ * elements and only one batch is in memory at once. An empty batch ends the stream.
+ */
+final class BatchedStream {
+    static final int BATCH_SIZE = 256;
+
+    private BatchedStream() {
+    }
+
+    static <T> Stream<T> of(Supplier<List<T>> nextBatch) {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            private Iterator<T> batch;
+            private boolean done;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                while (!done && (batch == null || !batch.hasNext())) {
+                    List<T> next = nextBatch.get();
+                    done = next.isEmpty();
+                    batch = next.iterator();
+                }
+                if (done) return false;
+                action.accept(batch.next());
+                return true;
+            }
+        }, false);
+    }
+}
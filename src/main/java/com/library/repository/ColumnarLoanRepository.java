@@ -0,0 +1,584 @@
+package com.library.repository;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import com.library.domain.LibraryItem;
+import com.library.domain.Loan;
+import com.library.domain.LoanSummary;
+import com.library.domain.User;
+import com.library.metrics.LatencyHistogram;
+import com.library.metrics.MetricsRegistry;
+
+/**
+ * Loan store for very large numbers of active loans. It uses the same journal and archive
+ * as {@link InMemoryLoanRepository} but keeps active loans as rows of primitive columns
+ * instead of {@link Loan} objects.
+ * <p>
+ * Items and users are held once each in a dictionary, and a row stores their dictionary
+ * indexes together with the loan's sequence number and due day. Each row also has links
+ * to the previous and next row of the same user. That is 24 bytes per loan, and the due
+ * date scan behind {@link #findLoansDueBefore} is a loop over one {@code int[]}.
+ * <p>
+ * Queries return new {@link Loan} views built from the rows, so the same loan is not the
+ * same object across two calls. Saving a returned view finds its row by item, user and
+ * due day. Rows are kept dense: a freed row is filled by moving the last row into it.
+ * An item has at most one active row, so saving a second active loan for an item that is
+ * already out is rejected with an {@link IllegalStateException}.
+ */
+public class ColumnarLoanRepository implements LoanRepository, LoanHistoryRepository {
+    private static final Logger LOGGER = Logger.getLogger(ColumnarLoanRepository.class.getName());
+    private static final String FILE_NAME = "loans.dat";
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LoanJournal journal;
+    private final LoanArchive archive;
+    private final LatencyHistogram saveLatency;
+    private final LatencyHistogram historyLatency;
+
+    // Dictionaries of every item and user that has had an active loan.
+    private final List<LibraryItem> items = new ArrayList<>();
+    private final Map<String, Integer> itemIndex = new HashMap<>();
+    private final List<User> users = new ArrayList<>();
+    private final Map<String, Integer> userIndex = new HashMap<>();
+    private int[] rowByItem = filledWithNone(INITIAL_CAPACITY);
+    private int[] firstRowByUser = filledWithNone(INITIAL_CAPACITY);
+    private final LoanSummaries summaries = new LoanSummaries();
+
+    // Active loan rows.
+    private int size;
+    private int nextSequence;
+    private int[] sequence = new int[INITIAL_CAPACITY];
+    private int[] item = new int[INITIAL_CAPACITY];
+    private int[] user = new int[INITIAL_CAPACITY];
+    private int[] dueDay = new int[INITIAL_CAPACITY];
+    private int[] previousOfUser = new int[INITIAL_CAPACITY];
+    private int[] nextOfUser = new int[INITIAL_CAPACITY];
+
+    public ColumnarLoanRepository() {
+        this(FILE_NAME);
+    }
+
+    public ColumnarLoanRepository(String fileName) {
+        this(fileName, null, null);
+    }
+
+    public ColumnarLoanRepository(String fileName, ItemRepository itemRepository, UserRepository userRepository) {
+        this(fileName, itemRepository, userRepository, MetricsRegistry.getDefault());
+    }
+
+    public ColumnarLoanRepository(String fileName, ItemRepository itemRepository, UserRepository userRepository,
+            MetricsRegistry metrics) {
+        this.journal = new LoanJournal(fileName, metrics);
+        this.archive = new LoanArchive(new File(fileName + ".archive"), LoanArchive.DEFAULT_SEGMENT_RECORDS,
+            itemRepository, userRepository, metrics);
+        this.saveLatency = metrics.histogram("loans.save");
+        this.historyLatency = metrics.histogram("loans.history");
+        long start = System.nanoTime();
+        loadFromFile(new EntityResolver(itemRepository, userRepository));
+        metrics.histogram("loans.load").recordSince(start);
+        metrics.gauge("loans.active", this, repository -> repository.read(() -> repository.size));
+    }
+
+    /** Writes the loan files before any row changes, so a save that throws leaves no trace. */
+    @Override
+    public void save(Loan loan) {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            int row = rowOf(loan);
+            if (loan.isActive()) {
+                if (row == NONE) {
+                    checkItemIsFree(loan);
+                    int seq = nextSequence++;
+                    journal.appendBorrow(seq, loan);
+                    addRow(seq, loan);
+                }
+            } else if (row != NONE) {
+                archiveReturned(sequence[row], loan);
+                removeRow(row);
+            } else {
+                Map<Integer, Loan> returned = Collections.singletonMap(nextSequence++, loan);
+                archive.append(returned);
+                journal.appendBatch(returned, returned.keySet());
+            }
+            if (journal.isCompactionDue()) {
+                journal.compact(loansBySequence(), nextSequence);
+            }
+        } finally {
+            lock.writeLock().unlock();
+            saveLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Saves the loans as {@link #save} would, with one archive write and one journal record.
+     * Rows change only once both writes have succeeded.
+     */
+    @Override
+    public void saveAll(List<Loan> loans) {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            checkItemsAreFree(loans);
+            Map<Integer, Loan> borrowed = new LinkedHashMap<>();
+            Map<Integer, Loan> returned = new LinkedHashMap<>();
+            Set<Loan> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Loan loan : loans) {
+                if (!seen.add(loan)) continue;
+                int row = rowOf(loan);
+                if (loan.isActive()) {
+                    if (row == NONE) {
+                        borrowed.put(nextSequence++, loan);
+                    }
+                } else if (row != NONE) {
+                    returned.put(sequence[row], loan);
+                } else {
+                    int seq = nextSequence++;
+                    borrowed.put(seq, loan);
+                    returned.put(seq, loan);
+                }
+            }
+            archive.append(returned);
+            journal.appendBatch(borrowed, returned.keySet());
+
+            // Returns first: checkItemsAreFree lets a batch lend an item it returns earlier on.
+            for (Map.Entry<Integer, Loan> entry : returned.entrySet()) {
+                int row = rowOf(entry.getValue());
+                if (row != NONE && sequence[row] == entry.getKey()) {
+                    removeRow(row);
+                }
+            }
+            for (Map.Entry<Integer, Loan> entry : borrowed.entrySet()) {
+                if (!returned.containsKey(entry.getKey())) {
+                    addRow(entry.getKey(), entry.getValue());
+                }
+            }
+            if (journal.isCompactionDue()) {
+                journal.compact(loansBySequence(), nextSequence);
+            }
+        } finally {
+            lock.writeLock().unlock();
+            saveLatency.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<Loan> findAllActiveLoans() {
+        return read(() -> {
+            List<Loan> result = new ArrayList<>(size);
+            for (int row = 0; row < size; row++) {
+                result.add(view(row));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public List<Loan> findActiveLoansByUser(User loanUser) {
+        return read(() -> activeLoansOf(loanUser.getId()));
+    }
+
+    @Override
+    public LoanSummary getLoanSummary(User loanUser) {
+        return read(() -> summaries.get(loanUser.getId()));
+    }
+
+    @Override
+    public Optional<Loan> findActiveLoanByItem(String itemId) {
+        return read(() -> {
+            Integer i = itemIndex.get(itemId);
+            return i == null || rowByItem[i] == NONE ? Optional.<Loan>empty() : Optional.of(view(rowByItem[i]));
+        });
+    }
+
+    /**
+     * Active loans due strictly before {@code date}, earliest due date first. Matching rows
+     * are ordered with a counting sort over their due days, so no comparison sort is needed
+     * unless the due days are spread far wider than the number of matches.
+     */
+    @Override
+    public List<Loan> findLoansDueBefore(LocalDate date) {
+        int limit = (int) date.toEpochDay();
+        return read(() -> {
+            int[] rows = rowsDueBefore(limit);
+            List<Loan> result = new ArrayList<>(rows.length);
+            for (int row : rows) {
+                result.add(view(row));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public List<Loan> findLoansDueBetween(LocalDate from, LocalDate to) {
+        int first = (int) from.toEpochDay();
+        int limit = (int) to.toEpochDay();
+        return read(() -> {
+            int[] rows = rowsDueBetween(first, limit);
+            List<Loan> result = new ArrayList<>(rows.length);
+            for (int row : rows) {
+                result.add(view(row));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public Stream<Loan> streamActiveLoans() {
+        return read(() -> views(Arrays.copyOf(item, size), Arrays.copyOf(user, size), Arrays.copyOf(dueDay, size)));
+    }
+
+    @Override
+    public Stream<Loan> streamLoansDueBefore(LocalDate date) {
+        int limit = (int) date.toEpochDay();
+        return read(() -> {
+            int[] rows = rowsDueBefore(limit);
+            int[] rowItems = new int[rows.length];
+            int[] rowUsers = new int[rows.length];
+            int[] rowDueDays = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                rowItems[i] = item[rows[i]];
+                rowUsers[i] = user[rows[i]];
+                rowDueDays[i] = dueDay[rows[i]];
+            }
+            return views(rowItems, rowUsers, rowDueDays);
+        });
+    }
+
+    /** Reads the archive without holding the repository lock, so saves are never blocked by it. */
+    @Override
+    public List<Loan> findLoanHistoryByUser(String userId) {
+        long start = System.nanoTime();
+        try {
+            List<Loan> history = archive.findByUser(userId);
+            history.addAll(read(() -> activeLoansOf(userId)));
+            return history;
+        } finally {
+            historyLatency.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<Loan> findLoanHistoryByItem(String itemId) {
+        long start = System.nanoTime();
+        try {
+            List<Loan> history = archive.findByItem(itemId);
+            findActiveLoanByItem(itemId).ifPresent(history::add);
+            return history;
+        } finally {
+            historyLatency.recordSince(start);
+        }
+    }
+
+    private <T> T read(Supplier<T> query) {
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] rowsDueBefore(int limit) {
+        return rowsDueBetween(Integer.MIN_VALUE, limit);
+    }
+
+    /** Rows due on or after {@code from} and before {@code limit}, ordered by due day and then by row. */
+    private int[] rowsDueBetween(int from, int limit) {
+        int count = 0;
+        int earliest = limit;
+        for (int row = 0; row < size; row++) {
+            int due = dueDay[row];
+            if (due >= from && due < limit) {
+                count++;
+                earliest = Math.min(earliest, due);
+            }
+        }
+        int[] rows = new int[count];
+        if (count == 0) return rows;
+
+        long span = (long) limit - earliest;
+        if (span > 4L * count + 1024) {
+            long[] keys = new long[count];
+            for (int row = 0, i = 0; row < size; row++) {
+                if (dueDay[row] >= from && dueDay[row] < limit) keys[i++] = ((long) dueDay[row] << 32) | row;
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < count; i++) {
+                rows[i] = (int) keys[i];
+            }
+            return rows;
+        }
+        int[] start = new int[(int) span + 1];
+        for (int row = 0; row < size; row++) {
+            if (dueDay[row] >= from && dueDay[row] < limit) start[dueDay[row] - earliest + 1]++;
+        }
+        for (int day = 1; day < start.length; day++) {
+            start[day] += start[day - 1];
+        }
+        for (int row = 0; row < size; row++) {
+            if (dueDay[row] >= from && dueDay[row] < limit) rows[start[dueDay[row] - earliest]++] = row;
+        }
+        return rows;
+    }
+
+    /**
+     * Streams views of rows copied out as columns, 12 bytes per loan, so later saves cannot
+     * move them; the stream shows the rows as they were when it was opened. Views are built
+     * a batch at a time under the read lock. Dictionary entries are never removed, so the
+     * copied indexes stay valid.
+     */
+    private Stream<Loan> views(int[] rowItems, int[] rowUsers, int[] rowDueDays) {
+        return BatchedStream.of(new Supplier<List<Loan>>() {
+            private int next;
+
+            @Override
+            public List<Loan> get() {
+                int end = Math.min(next + BatchedStream.BATCH_SIZE, rowItems.length);
+                return read(() -> {
+                    List<Loan> batch = new ArrayList<>(end - next);
+                    for (; next < end; next++) {
+                        batch.add(view(rowItems[next], rowUsers[next], rowDueDays[next]));
+                    }
+                    return batch;
+                });
+            }
+        });
+    }
+
+    private List<Loan> activeLoansOf(String userId) {
+        List<Loan> result = new ArrayList<>();
+        Integer u = userIndex.get(userId);
+        if (u != null) {
+            for (int row = firstRowByUser[u]; row != NONE; row = nextOfUser[row]) {
+                result.add(view(row));
+            }
+        }
+        return result;
+    }
+
+    private Loan view(int row) {
+        return view(item[row], user[row], dueDay[row]);
+    }
+
+    private Loan view(int itemIndex, int userIndex, int due) {
+        LibraryItem loanItem = items.get(itemIndex);
+        return new Loan(loanItem, users.get(userIndex), LocalDate.ofEpochDay(due - loanItem.getLoanPeriodDays()));
+    }
+
+    /** The row holding {@code loan}, matched by item, user and due day, or {@link #NONE}. */
+    private int rowOf(Loan loan) {
+        Integer i = itemIndex.get(loan.getItem().getId());
+        if (i == null) return NONE;
+        int row = rowByItem[i];
+        if (row == NONE
+                || !users.get(user[row]).getId().equals(loan.getUser().getId())
+                || dueDay[row] != (int) loan.getDueDate().toEpochDay()) {
+            return NONE;
+        }
+        return row;
+    }
+
+    /** The row of the item's active loan, whoever it is for, or {@link #NONE}. */
+    private int activeRowOfItem(String itemId) {
+        Integer i = itemIndex.get(itemId);
+        return i == null ? NONE : rowByItem[i];
+    }
+
+    private void checkItemIsFree(Loan loan) {
+        if (activeRowOfItem(loan.getItem().getId()) != NONE) {
+            throw new IllegalStateException("Item " + loan.getItem().getId() + " is already on an active loan");
+        }
+    }
+
+    /** Checks a whole batch before any of it is applied, following the returns it makes. */
+    private void checkItemsAreFree(List<Loan> loans) {
+        Map<String, Loan> claimed = new HashMap<>();
+        for (Loan loan : loans) {
+            String itemId = loan.getItem().getId();
+            boolean stored = rowOf(loan) != NONE;
+            if (!loan.isActive()) {
+                if (stored || claimed.get(itemId) == loan) {
+                    claimed.put(itemId, null);
+                }
+            } else if (!stored) {
+                boolean out = claimed.containsKey(itemId) ? claimed.get(itemId) != null : activeRowOfItem(itemId) != NONE;
+                if (out && claimed.get(itemId) != loan) {
+                    throw new IllegalStateException("Item " + itemId + " is already on an active loan");
+                }
+                claimed.put(itemId, loan);
+            }
+        }
+    }
+
+    private void addRow(int seq, Loan loan) {
+        if (size == sequence.length) {
+            int capacity = size * 2;
+            sequence = Arrays.copyOf(sequence, capacity);
+            item = Arrays.copyOf(item, capacity);
+            user = Arrays.copyOf(user, capacity);
+            dueDay = Arrays.copyOf(dueDay, capacity);
+            previousOfUser = Arrays.copyOf(previousOfUser, capacity);
+            nextOfUser = Arrays.copyOf(nextOfUser, capacity);
+        }
+        int i = internItem(loan.getItem());
+        int u = internUser(loan.getUser());
+        int row = size++;
+        sequence[row] = seq;
+        item[row] = i;
+        user[row] = u;
+        dueDay[row] = (int) loan.getDueDate().toEpochDay();
+        rowByItem[i] = row;
+        previousOfUser[row] = NONE;
+        nextOfUser[row] = firstRowByUser[u];
+        if (firstRowByUser[u] != NONE) {
+            previousOfUser[firstRowByUser[u]] = row;
+        }
+        firstRowByUser[u] = row;
+        summaries.add(loan.getUser().getId(), dueDay[row]);
+    }
+
+    private void removeRow(int row) {
+        summaries.remove(users.get(user[row]).getId(), dueDay[row]);
+        unlinkFromUser(row);
+        if (rowByItem[item[row]] == row) {
+            rowByItem[item[row]] = NONE;
+        }
+        int last = --size;
+        if (row == last) return;
+
+        sequence[row] = sequence[last];
+        item[row] = item[last];
+        user[row] = user[last];
+        dueDay[row] = dueDay[last];
+        previousOfUser[row] = previousOfUser[last];
+        nextOfUser[row] = nextOfUser[last];
+        if (previousOfUser[row] != NONE) {
+            nextOfUser[previousOfUser[row]] = row;
+        } else {
+            firstRowByUser[user[row]] = row;
+        }
+        if (nextOfUser[row] != NONE) {
+            previousOfUser[nextOfUser[row]] = row;
+        }
+        if (rowByItem[item[row]] == last) {
+            rowByItem[item[row]] = row;
+        }
+    }
+
+    private void unlinkFromUser(int row) {
+        int previous = previousOfUser[row];
+        int next = nextOfUser[row];
+        if (previous != NONE) {
+            nextOfUser[previous] = next;
+        } else {
+            firstRowByUser[user[row]] = next;
+        }
+        if (next != NONE) {
+            previousOfUser[next] = previous;
+        }
+    }
+
+    /** Returns the dictionary index of the item, keeping the most recently saved instance. */
+    private int internItem(LibraryItem loanItem) {
+        Integer i = itemIndex.get(loanItem.getId());
+        if (i != null) {
+            items.set(i, loanItem);
+            return i;
+        }
+        i = items.size();
+        items.add(loanItem);
+        itemIndex.put(loanItem.getId(), i);
+        if (i == rowByItem.length) {
+            rowByItem = grow(rowByItem);
+        }
+        return i;
+    }
+
+    private int internUser(User loanUser) {
+        Integer u = userIndex.get(loanUser.getId());
+        if (u != null) {
+            users.set(u, loanUser);
+            return u;
+        }
+        u = users.size();
+        users.add(loanUser);
+        userIndex.put(loanUser.getId(), u);
+        if (u == firstRowByUser.length) {
+            firstRowByUser = grow(firstRowByUser);
+        }
+        return u;
+    }
+
+    private Map<Integer, Loan> loansBySequence() {
+        Map<Integer, Loan> loans = new LinkedHashMap<>();
+        for (int row = 0; row < size; row++) {
+            loans.put(sequence[row], view(row));
+        }
+        return loans;
+    }
+
+    private void archiveReturned(int seq, Loan loan) {
+        archive.append(Collections.singletonMap(seq, loan));
+        journal.appendReturn(seq);
+    }
+
+    private void loadFromFile(EntityResolver resolver) {
+        LoadedLoans loaded = journal.replay(resolver);
+        archive.append(loaded.unarchived);
+        nextSequence = loaded.nextSequence;
+        if (loaded.needsCompaction) {
+            // Archived loans are told apart by sequence number, so never hand out one of theirs
+            // again; the compaction below keeps the new start in the snapshot header.
+            nextSequence = Math.max(nextSequence, archive.highestSequence() + 1);
+        }
+        Map<Integer, Loan> retired = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Loan> entry : loaded.active.entrySet()) {
+            Loan loan = entry.getValue();
+            int earlier = activeRowOfItem(loan.getItem().getId());
+            if (earlier != NONE) {
+                // Files written by another store may hold two active loans for one item.
+                LOGGER.warning("Item " + loan.getItem().getId() + " has two active loans; archiving the earlier one");
+                Loan view = view(earlier);
+                view.returnItem();
+                retired.put(sequence[earlier], view);
+                removeRow(earlier);
+            }
+            loan.getItem().setBorrowed(true);
+            addRow(entry.getKey(), loan);
+        }
+        archive.append(retired);
+        if (!loaded.unarchived.isEmpty() || !retired.isEmpty() || loaded.needsCompaction) {
+            journal.compact(loansBySequence(), nextSequence);
+        }
+    }
+
+    private static int[] filledWithNone(int capacity) {
+        int[] array = new int[capacity];
+        Arrays.fill(array, NONE);
+        return array;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] grown = Arrays.copyOf(array, array.length * 2);
+        Arrays.fill(grown, array.length, grown.length, NONE);
+        return grown;
+    }
+}
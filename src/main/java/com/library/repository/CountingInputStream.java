@@ -0,0 +1,32 @@
+package com.library.repository;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Tracks how many bytes have been read, so a reader can stop at or truncate to a known length. */
+final class CountingInputStream extends FilterInputStream {
+    private long position;
+
+    CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    long getPosition() {
+        return position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) position++;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) position += n;
+        return n;
+    }
+}
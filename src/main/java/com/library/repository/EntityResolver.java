@@ -0,0 +1,83 @@
+package com.library.repository;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.library.domain.LibraryItem;
+import com.library.domain.User;
+
+/**
+ * Maps the items and users that loan records refer to onto one canonical instance per id,
+ * so every loan of the same user or item shares a single object.
+ * <p>
+ * When backed by live repositories, the instance registered there wins. An id the
+ * repository does not know, such as a user who has since been removed, gets a placeholder
+ * that carries only the id and is never registered. Older records embed the whole entity;
+ * when loading, one the repository does not know yet is registered from that data. Without
+ * repositories, the first copy of each id becomes the canonical one.
+ */
+final class EntityResolver {
+    private final ItemRepository itemRepository;
+    private final UserRepository userRepository;
+    private final boolean registerEmbedded;
+    private final Map<String, LibraryItem> itemsById = new HashMap<>();
+    private final Map<String, User> usersById = new HashMap<>();
+
+    /** Either repository may be {@code null}, in which case that side is only deduplicated. */
+    EntityResolver(ItemRepository itemRepository, UserRepository userRepository) {
+        this(itemRepository, userRepository, true);
+    }
+
+    private EntityResolver(ItemRepository itemRepository, UserRepository userRepository, boolean registerEmbedded) {
+        this.itemRepository = itemRepository;
+        this.userRepository = userRepository;
+        this.registerEmbedded = registerEmbedded;
+    }
+
+    /** A resolver for queries, which must not register anything with the repositories. */
+    static EntityResolver lookupOnly(ItemRepository itemRepository, UserRepository userRepository) {
+        return new EntityResolver(itemRepository, userRepository, false);
+    }
+
+    /** Resolves an item referred to by id, or a placeholder of the given kind. */
+    LibraryItem item(byte kind, String id) throws IOException {
+        LibraryItem known = itemsById.get(id);
+        if (known != null) return known;
+        LibraryItem item = itemRepository == null ? null : itemRepository.findById(id).orElse(null);
+        if (item == null) {
+            item = LoanCodec.newItem(kind, id, id, "");
+        }
+        itemsById.put(id, item);
+        return item;
+    }
+
+    /** Resolves a user referred to by id, or a placeholder. */
+    User user(String id) {
+        return usersById.computeIfAbsent(id, key -> {
+            User user = userRepository == null ? null : userRepository.findById(key).orElse(null);
+            return user != null ? user : new User(key, key, "");
+        });
+    }
+
+    /** Resolves an item embedded in an older record. */
+    LibraryItem item(LibraryItem decoded) {
+        return itemsById.computeIfAbsent(decoded.getId(), id -> {
+            if (itemRepository == null) return decoded;
+            return itemRepository.findById(id).orElseGet(() -> {
+                if (registerEmbedded) {
+                    itemRepository.save(decoded);
+                }
+                return decoded;
+            });
+        });
+    }
+
+    /** Resolves a user embedded in an older record. */
+    User user(User decoded) {
+        return usersById.computeIfAbsent(decoded.getId(), id -> {
+            if (userRepository == null) return decoded;
+            return userRepository.findById(id).orElseGet(() -> registerEmbedded ? userRepository.save(decoded) : decoded);
+        });
+    }
+}
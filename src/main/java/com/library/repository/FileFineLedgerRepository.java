@@ -0,0 +1,166 @@
+package com.library.repository;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.library.domain.FineEntry;
+import com.library.domain.Money;
+import com.library.metrics.LatencyHistogram;
+import com.library.metrics.MetricsRegistry;
+
+/**
+ * Fine ledger persisted in an append-only file.
+ * <p>
+ * The file holds a header followed by batches of {@code [entry count][entries][watermark]}.
+ * Each {@link #append} writes one batch with a single write call, so a run's entries and the
+ * watermark that says they were charged are never separated; a batch cut short at the end
+ * of the file (e.g. after a crash) is dropped on startup as if the run never happened.
+ * Entries are held in memory per user. A file that cannot be read is left untouched and
+ * every later append is refused, since its watermark is unknown.
+ */
+public class FileFineLedgerRepository implements FineLedgerRepository {
+    private static final Logger LOGGER = Logger.getLogger(FileFineLedgerRepository.class.getName());
+    private static final String FILE_NAME = "fines.dat";
+    private static final int MAGIC = 0x46494E45; // "FINE"
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final Map<String, List<FineEntry>> entriesByUser = new HashMap<>();
+    private final LatencyHistogram appendLatency;
+    private long accruedThrough = NEVER_ACCRUED;
+    private long entryCount;
+    private boolean loaded;
+
+    public FileFineLedgerRepository() {
+        this(FILE_NAME);
+    }
+
+    public FileFineLedgerRepository(String fileName) {
+        this(fileName, MetricsRegistry.getDefault());
+    }
+
+    public FileFineLedgerRepository(String fileName, MetricsRegistry metrics) {
+        this.file = new File(fileName);
+        this.appendLatency = metrics.histogram("fines.ledger.append");
+        long start = System.nanoTime();
+        load();
+        metrics.histogram("fines.ledger.load").recordSince(start);
+        metrics.gauge("fines.ledger.entries", this, FileFineLedgerRepository::getEntryCount);
+    }
+
+    @Override
+    public synchronized boolean append(List<FineEntry> entries, long watermark) {
+        if (!loaded) {
+            LOGGER.severe("Not saving fine entries: " + file.getName() + " could not be loaded");
+            return false;
+        }
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(64 + 48 * entries.size());
+        try {
+            DataOutputStream out = new DataOutputStream(batch);
+            if (!file.exists() || file.length() == 0) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            out.writeInt(entries.size());
+            for (FineEntry entry : entries) {
+                writeEntry(out, entry);
+            }
+            out.writeLong(watermark);
+        } catch (IOException e) {
+            LOGGER.severe("Could not encode fine entries: " + e.getMessage());
+            return false;
+        }
+        long start = System.nanoTime();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            batch.writeTo(out);
+        } catch (IOException e) {
+            LOGGER.severe("Could not save fine entries: " + e.getMessage());
+            return false;
+        } finally {
+            appendLatency.recordSince(start);
+        }
+        apply(entries, watermark);
+        return true;
+    }
+
+    @Override
+    public synchronized List<FineEntry> findEntriesByUser(String userId) {
+        return new ArrayList<>(entriesByUser.getOrDefault(userId, Collections.emptyList()));
+    }
+
+    @Override
+    public synchronized long getAccruedThrough() {
+        return accruedThrough;
+    }
+
+    private synchronized long getEntryCount() {
+        return entryCount;
+    }
+
+    private void apply(List<FineEntry> entries, long watermark) {
+        for (FineEntry entry : entries) {
+            entriesByUser.computeIfAbsent(entry.getUserId(), id -> new ArrayList<>()).add(entry);
+        }
+        entryCount += entries.size();
+        accruedThrough = Math.max(accruedThrough, watermark);
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            loaded = true;
+            return;
+        }
+        long complete = 0;
+        try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            DataInputStream in = new DataInputStream(counter);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file.getName() + " is not a fine ledger");
+            }
+            complete = counter.getPosition();
+            while (in.available() > 0) {
+                int count = in.readInt();
+                List<FineEntry> entries = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    entries.add(readEntry(in));
+                }
+                apply(entries, in.readLong());
+                complete = counter.getPosition();
+            }
+            loaded = true;
+        } catch (EOFException e) {
+            LOGGER.warning("Ignoring incomplete batch at the end of " + file.getName());
+            loaded = truncate(complete);
+        } catch (IOException e) {
+            LOGGER.severe("Could not load fine ledger: " + e.getMessage());
+        }
+    }
+
+    private boolean truncate(long length) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+            return true;
+        } catch (IOException e) {
+            LOGGER.severe("Could not truncate " + file.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static void writeEntry(DataOutput out, FineEntry entry) throws IOException {
+        out.writeUTF(entry.getUserId());
+        out.writeUTF(entry.isPayment() ? "" : entry.getItemId());
+        out.writeLong(entry.getFromEpochDay());
+        out.writeLong(entry.getThroughEpochDay());
+        out.writeDouble(entry.getAmount().toDouble());
+    }
+
+    private static FineEntry readEntry(DataInput in) throws IOException {
+        String userId = in.readUTF();
+        String itemId = in.readUTF();
+        return new FineEntry(userId, itemId.isEmpty() ? null : itemId, in.readLong(), in.readLong(), Money.of(in.readDouble()));
+    }
+}
@@ -0,0 +1,74 @@
+package com.library.repository;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.library.domain.ItemHolds;
+
+/**
+ * Holds persisted in a {@link RecordLog} keyed by item, so a change to one item's wait list
+ * appends one small record.
+ */
+public class FileHoldRepository implements HoldRepository, Closeable {
+    private static final Logger LOGGER = Logger.getLogger(FileHoldRepository.class.getName());
+    private static final String FILE_NAME = "holds.dat";
+
+    private final RecordLog log;
+
+    public FileHoldRepository() {
+        this(FILE_NAME);
+    }
+
+    public FileHoldRepository(String fileName) {
+        this.log = new RecordLog(fileName);
+    }
+
+    @Override
+    public void save(ItemHolds holds) {
+        if (holds.isEmpty()) {
+            log.delete(holds.getItemId());
+            return;
+        }
+        log.put(holds.getItemId(), RecordLog.encode(out -> {
+            out.writeInt(holds.getWaitingUserIds().size());
+            for (String userId : holds.getWaitingUserIds()) {
+                out.writeUTF(userId);
+            }
+            out.writeBoolean(holds.getReadyUserId() != null);
+            if (holds.getReadyUserId() != null) {
+                out.writeUTF(holds.getReadyUserId());
+                out.writeLong(holds.getPickupByEpochDay());
+            }
+        }));
+    }
+
+    @Override
+    public List<ItemHolds> findAll() {
+        List<ItemHolds> result = new ArrayList<>();
+        for (String itemId : log.ids()) {
+            byte[] body = log.get(itemId);
+            if (body == null) continue;
+            try (DataInputStream in = RecordLog.decode(body)) {
+                int count = in.readInt();
+                List<String> waiting = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    waiting.add(in.readUTF());
+                }
+                boolean ready = in.readBoolean();
+                result.add(new ItemHolds(itemId, waiting, ready ? in.readUTF() : null, ready ? in.readLong() : 0));
+            } catch (IOException e) {
+                LOGGER.severe("Could not decode holds on item " + itemId + ": " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+}
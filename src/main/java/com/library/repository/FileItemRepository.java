@@ -0,0 +1,165 @@
+package com.library.repository;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.logging.Logger;
+import com.library.domain.LibraryItem;
+import com.library.metrics.LatencyHistogram;
+import com.library.metrics.MetricsRegistry;
+
+/**
+ * Catalog persisted in a {@link RecordLog}. Every save appends one record.
+ * <p>
+ * Startup only indexes record positions. An item is decoded the first time it is looked
+ * up, and the same instance is returned from then on. The search index is built on the
+ * first search, which is the only operation that has to decode the whole catalog.
+ */
+public class FileItemRepository implements ItemRepository, Closeable {
+    private static final Logger LOGGER = Logger.getLogger(FileItemRepository.class.getName());
+    private static final String FILE_NAME = "items.dat";
+    // Field order in the search index; searchByTitle only looks at the first field.
+    private static final int TITLE_ONLY = 1;
+    private static final int ALL_FIELDS = 3;
+    private static final int LOCK_STRIPES = 64;
+
+    private final RecordLog log;
+    private final Map<String, LibraryItem> materialized = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final Object indexLock = new Object();
+    private volatile TrigramIndex searchIndex;
+    private final LatencyHistogram searchLatency;
+
+    public FileItemRepository() {
+        this(FILE_NAME);
+    }
+
+    public FileItemRepository(String fileName) {
+        this(fileName, MetricsRegistry.getDefault());
+    }
+
+    public FileItemRepository(String fileName, MetricsRegistry metrics) {
+        long start = System.nanoTime();
+        this.log = new RecordLog(fileName);
+        metrics.histogram("items.load").recordSince(start);
+        this.searchLatency = metrics.histogram("items.search");
+        metrics.gauge("items.count", log, RecordLog::size);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Saves are serialized per ID stripe so the record, the cached instance and the index
+     * entry always describe the same item. A save that finds no search index yet waits for
+     * a build in progress, so the build can never overwrite it with an older version.
+     */
+    @Override
+    public void save(LibraryItem item) {
+        synchronized (lockFor(item.getId())) {
+            log.put(item.getId(), RecordLog.encode(out -> {
+                out.writeByte(LoanCodec.kindOf(item));
+                out.writeUTF(item.getTitle());
+                out.writeUTF(item.getCreator());
+            }));
+            materialized.put(item.getId(), item);
+            TrigramIndex index = searchIndex;
+            if (index == null) {
+                synchronized (indexLock) {
+                    index = searchIndex;
+                }
+            }
+            if (index != null) {
+                index.put(item.getId(), item.getTitle(), item.getCreator(), item.getId());
+            }
+        }
+    }
+
+    @Override
+    public Optional<LibraryItem> findById(String id) {
+        return Optional.ofNullable(materialized.computeIfAbsent(id, this::load));
+    }
+
+    @Override
+    public List<LibraryItem> searchByTitle(String title) {
+        long start = System.nanoTime();
+        try {
+            return resolve(searchIndex().search(title, TITLE_ONLY));
+        } finally {
+            searchLatency.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<LibraryItem> search(String query) {
+        long start = System.nanoTime();
+        try {
+            return resolve(searchIndex().search(query, ALL_FIELDS));
+        } finally {
+            searchLatency.recordSince(start);
+        }
+    }
+
+    @Override
+    public Stream<LibraryItem> streamByTitle(String title) {
+        return resolve(searchIndex().stream(title, TITLE_ONLY));
+    }
+
+    @Override
+    public Stream<LibraryItem> streamSearch(String query) {
+        return resolve(searchIndex().stream(query, ALL_FIELDS));
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    private TrigramIndex searchIndex() {
+        TrigramIndex index = searchIndex;
+        if (index != null) return index;
+        synchronized (indexLock) {
+            if (searchIndex == null) {
+                TrigramIndex built = new TrigramIndex();
+                for (String id : log.ids()) {
+                    findById(id).ifPresent(item -> built.put(item.getId(), item.getTitle(), item.getCreator(), item.getId()));
+                }
+                searchIndex = built;
+            }
+            return searchIndex;
+        }
+    }
+
+    private List<LibraryItem> resolve(List<String> ids) {
+        List<LibraryItem> items = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            findById(id).ifPresent(items::add);
+        }
+        return items;
+    }
+
+    private Stream<LibraryItem> resolve(Stream<String> ids) {
+        return ids.map(this::findById).filter(Optional::isPresent).map(Optional::get);
+    }
+
+    private LibraryItem load(String id) {
+        byte[] body = log.get(id);
+        if (body == null) return null;
+        try (DataInputStream in = RecordLog.decode(body)) {
+            return LoanCodec.newItem(in.readByte(), id, in.readUTF(), in.readUTF());
+        } catch (IOException e) {
+            LOGGER.severe("Could not read item " + id + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Object lockFor(String id) {
+        return locks[(id.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+}
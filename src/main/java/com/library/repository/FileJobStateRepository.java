@@ -0,0 +1,72 @@
+package com.library.repository;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Last-run days of scheduled jobs, kept in a small file that is rewritten as a whole on
+ * every change: written to a temporary file first and then moved over the old one, so a
+ * crash leaves either the old or the new state.
+ */
+public class FileJobStateRepository implements JobStateRepository {
+    private static final Logger LOGGER = Logger.getLogger(FileJobStateRepository.class.getName());
+    private static final String FILE_NAME = "jobs.dat";
+    private static final int MAGIC = 0x4A4F4253; // "JOBS"
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final Map<String, Long> lastRuns = new TreeMap<>();
+
+    public FileJobStateRepository() {
+        this(FILE_NAME);
+    }
+
+    public FileJobStateRepository(String fileName) {
+        this.file = new File(fileName);
+        load();
+    }
+
+    @Override
+    public synchronized long getLastRun(String jobName) {
+        return lastRuns.getOrDefault(jobName, NEVER_RUN);
+    }
+
+    @Override
+    public synchronized void setLastRun(String jobName, long epochDay) {
+        lastRuns.put(jobName, epochDay);
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(lastRuns.size());
+                for (Map.Entry<String, Long> entry : lastRuns.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.severe("Could not save job state: " + e.getMessage());
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file.getName() + " is not a job state file");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                lastRuns.put(in.readUTF(), in.readLong());
+            }
+        } catch (IOException e) {
+            LOGGER.severe("Could not load job state: " + e.getMessage());
+        }
+    }
+}
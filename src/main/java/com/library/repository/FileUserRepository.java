@@ -0,0 +1,83 @@
+package com.library.repository;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import com.library.domain.User;
+import com.library.metrics.MetricsRegistry;
+
+/**
+ * User store persisted in a {@link RecordLog}. Every save appends one record. Startup only
+ * indexes record positions; a user is decoded the first time it is looked up, and the same
+ * instance is returned from then on.
+ */
+public class FileUserRepository implements UserRepository, Closeable {
+    private static final Logger LOGGER = Logger.getLogger(FileUserRepository.class.getName());
+    private static final String FILE_NAME = "users.dat";
+
+    private final RecordLog log;
+    private final Map<String, User> materialized = new ConcurrentHashMap<>();
+
+    public FileUserRepository() {
+        this(FILE_NAME);
+    }
+
+    public FileUserRepository(String fileName) {
+        this(fileName, MetricsRegistry.getDefault());
+    }
+
+    public FileUserRepository(String fileName, MetricsRegistry metrics) {
+        long start = System.nanoTime();
+        this.log = new RecordLog(fileName);
+        metrics.histogram("users.load").recordSince(start);
+        metrics.gauge("users.count", log, RecordLog::size);
+    }
+
+    /**
+     * Saves are serialized, so the record stored last is also the one encoded last: fine
+     * accrual and the desk can save the same user at once.
+     */
+    @Override
+    public synchronized User save(User user) {
+        log.put(user.getId(), RecordLog.encode(out -> {
+            out.writeUTF(user.getName());
+            out.writeUTF(user.getPassword());
+            out.writeDouble(user.getFinesOwed());
+        }));
+        materialized.put(user.getId(), user);
+        return user;
+    }
+
+    @Override
+    public Optional<User> findById(String id) {
+        return Optional.ofNullable(materialized.computeIfAbsent(id, this::load));
+    }
+
+    @Override
+    public synchronized void delete(User user) {
+        log.delete(user.getId());
+        materialized.remove(user.getId());
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    private User load(String id) {
+        byte[] body = log.get(id);
+        if (body == null) return null;
+        try (DataInputStream in = RecordLog.decode(body)) {
+            User user = new User(id, in.readUTF(), in.readUTF());
+            user.setFinesOwed(in.readDouble());
+            return user;
+        } catch (IOException e) {
+            LOGGER.severe("Could not read user " + id + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
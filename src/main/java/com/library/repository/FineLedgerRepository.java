@@ -0,0 +1,18 @@
+package com.library.repository;
+
+import java.util.List;
+import com.library.domain.FineEntry;
+
+public interface FineLedgerRepository {
+    /** No accrual has been recorded yet. */
+    long NEVER_ACCRUED = Long.MIN_VALUE;
+
+    /**
+     * Appends {@code entries} and moves the accrual watermark to {@code accruedThrough} in one
+     * write. Returns {@code false}, changing nothing, if they could not be stored durably.
+     */
+    boolean append(List<FineEntry> entries, long accruedThrough);
+    List<FineEntry> findEntriesByUser(String userId);
+    /** The last epoch day fines have been accrued for, or {@link #NEVER_ACCRUED}. */
+    long getAccruedThrough();
+}
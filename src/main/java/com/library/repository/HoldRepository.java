@@ -0,0 +1,10 @@
+package com.library.repository;
+
+import java.util.List;
+import com.library.domain.ItemHolds;
+
+public interface HoldRepository {
+    /** Replaces the stored holds on {@code holds.getItemId()}; empty holds are removed. */
+    void save(ItemHolds holds);
+    List<ItemHolds> findAll();
+}
@@ -1,18 +1,49 @@
 package com.library.repository;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 import com.library.domain.LibraryItem;
+import com.library.metrics.LatencyHistogram;
+import com.library.metrics.MetricsRegistry;
 
 public class InMemoryItemRepository implements ItemRepository {
-    private static final Map<String, LibraryItem> inventory = new HashMap<>();
+    // Field order in the search index; searchByTitle only looks at the first field.
+    private static final int TITLE_ONLY = 1;
+    private static final int ALL_FIELDS = 3;
+    private static final int LOCK_STRIPES = 64;
 
+    private final Map<String, LibraryItem> inventory = new ConcurrentHashMap<>();
+    private final TrigramIndex searchIndex = new TrigramIndex();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final LatencyHistogram searchLatency;
+
+    public InMemoryItemRepository() {
+        this(MetricsRegistry.getDefault());
+    }
+
+    public InMemoryItemRepository(MetricsRegistry metrics) {
+        this.searchLatency = metrics.histogram("items.search");
+        metrics.gauge("items.count", inventory, Map::size);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Saves are serialized per ID stripe so the inventory entry and its index entry always
+     * describe the same item; saves of different items proceed in parallel.
+     */
     @Override
     public void save(LibraryItem item) {
-        inventory.put(item.getId(), item);
+        synchronized (lockFor(item.getId())) {
+            inventory.put(item.getId(), item);
+            searchIndex.put(item.getId(), item.getTitle(), item.getCreator(), item.getId());
+        }
     }
 
     @Override
@@ -22,8 +53,46 @@ public class InMemoryItemRepository implements ItemRepository {
 
     @Override
     public List<LibraryItem> searchByTitle(String title) {
-        return inventory.values().stream()
-            .filter(item -> item.getTitle().toLowerCase().contains(title.toLowerCase()))
-            .collect(Collectors.toList());
+        long start = System.nanoTime();
+        try {
+            return resolve(searchIndex.search(title, TITLE_ONLY));
+        } finally {
+            searchLatency.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<LibraryItem> search(String query) {
+        long start = System.nanoTime();
+        try {
+            return resolve(searchIndex.search(query, ALL_FIELDS));
+        } finally {
+            searchLatency.recordSince(start);
+        }
+    }
+
+    @Override
+    public Stream<LibraryItem> streamByTitle(String title) {
+        return searchIndex.stream(title, TITLE_ONLY).map(inventory::get).filter(Objects::nonNull);
+    }
+
+    @Override
+    public Stream<LibraryItem> streamSearch(String query) {
+        return searchIndex.stream(query, ALL_FIELDS).map(inventory::get).filter(Objects::nonNull);
+    }
+
+    private List<LibraryItem> resolve(List<String> ids) {
+        List<LibraryItem> items = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            LibraryItem item = inventory.get(id);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    private Object lockFor(String id) {
+        return locks[(id.hashCode() & Integer.MAX_VALUE) % locks.length];
     }
-}
\ No newline at end of file
+}
@@ -1,60 +1,414 @@
 package com.library.repository;
 
-import java.io.*;
+import java.io.File;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.logging.Logger;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import com.library.domain.Loan;
+import com.library.domain.LoanSummary;
 import com.library.domain.User;
+import com.library.metrics.LatencyHistogram;
+import com.library.metrics.MetricsRegistry;
 
-public class InMemoryLoanRepository implements LoanRepository {
-    private static final Logger LOGGER = Logger.getLogger(InMemoryLoanRepository.class.getName());
+/**
+ * Loan store backed by an append-only journal.
+ * <p>
+ * Only active loans are kept in memory. A returned loan is moved to a {@link LoanArchive}
+ * of compressed segments next to the loan file, which {@link LoanHistoryRepository}
+ * queries read on demand.
+ * <p>
+ * Loan files refer to items and users by id. When constructed with the item and user
+ * repositories, loaded loans and loan history refer to the same instances those
+ * repositories hold, and items on an active loan are marked as borrowed.
+ * <p>
+ * Safe for use from many threads. Saves are serialized by a save lock, because journal
+ * records must be written in sequence order, and take the exclusive lock only to update the
+ * in-memory indexes once the files are written. Queries share a read lock and run in
+ * parallel; they wait for an index update, never for the disk.
+ */
+public class InMemoryLoanRepository implements LoanRepository, LoanHistoryRepository {
     private static final String FILE_NAME = "loans.dat";
-    private List<Loan> loanStore;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object saveLock = new Object();
+    private final LoanJournal journal;
+    private final LoanArchive archive;
+    // Sorted so batched streams can resume after the last sequence number they returned.
+    // Changed under both locks, so either one is enough to read it.
+    private final TreeMap<Integer, Loan> loansBySequence = new TreeMap<>();
+    // Guarded by saveLock.
+    private final Map<Loan, Integer> sequenceByLoan = new IdentityHashMap<>();
+    private int nextSequence;
+    private final LatencyHistogram saveLatency;
+    private final LatencyHistogram historyLatency;
+
+    // Indexes over active loans only. A loan returned without being saved again stays
+    // indexed until its next save, so every lookup re-checks Loan::isActive.
+    private final Set<Loan> activeLoans = new LinkedHashSet<>();
+    private final Map<String, Set<Loan>> activeLoansByUser = new HashMap<>();
+    private final Map<String, Loan> activeLoanByItem = new HashMap<>();
+    private final TreeMap<LocalDate, Set<Loan>> activeLoansByDueDate = new TreeMap<>();
+    private final LoanSummaries summaries = new LoanSummaries();
 
     public InMemoryLoanRepository() {
-        this.loanStore = loadFromFile();
+        this(FILE_NAME);
+    }
+
+    public InMemoryLoanRepository(String fileName) {
+        this(fileName, MetricsRegistry.getDefault());
+    }
+
+    public InMemoryLoanRepository(String fileName, MetricsRegistry metrics) {
+        this(fileName, null, null, metrics);
+    }
+
+    public InMemoryLoanRepository(ItemRepository itemRepository, UserRepository userRepository) {
+        this(FILE_NAME, itemRepository, userRepository);
+    }
+
+    public InMemoryLoanRepository(String fileName, ItemRepository itemRepository, UserRepository userRepository) {
+        this(fileName, itemRepository, userRepository, MetricsRegistry.getDefault());
     }
 
+    public InMemoryLoanRepository(String fileName, ItemRepository itemRepository, UserRepository userRepository,
+            MetricsRegistry metrics) {
+        this.journal = new LoanJournal(fileName, metrics);
+        this.archive = new LoanArchive(new File(fileName + ".archive"), LoanArchive.DEFAULT_SEGMENT_RECORDS,
+            itemRepository, userRepository, metrics);
+        this.saveLatency = metrics.histogram("loans.save");
+        this.historyLatency = metrics.histogram("loans.history");
+        long start = System.nanoTime();
+        loadFromFile(new EntityResolver(itemRepository, userRepository));
+        metrics.histogram("loans.load").recordSince(start);
+        metrics.gauge("loans.active", this, repository -> repository.read(repository.activeLoans::size));
+    }
+
+    /**
+     * Saves a new loan, or records the return of a loan that is already stored. A returned
+     * loan is appended to the archive and dropped from memory, so saving it once more
+     * records it as a new loan. The loan files are written before anything in memory
+     * changes, so a save that throws {@link java.io.UncheckedIOException} leaves no trace.
+     */
     @Override
     public void save(Loan loan) {
-        loanStore.add(loan);
-        saveToFile();
+        long start = System.nanoTime();
+        try {
+            synchronized (saveLock) {
+                Integer sequence = sequenceByLoan.get(loan);
+                if (sequence == null) {
+                    int borrowed = nextSequence++;
+                    if (loan.isActive()) {
+                        journal.appendBorrow(borrowed, loan);
+                        sequenceByLoan.put(loan, borrowed);
+                        write(() -> {
+                            loansBySequence.put(borrowed, loan);
+                            index(loan);
+                        });
+                    } else {
+                        Map<Integer, Loan> returned = Collections.singletonMap(borrowed, loan);
+                        archive.append(returned);
+                        journal.appendBatch(returned, returned.keySet());
+                    }
+                } else if (!loan.isActive()) {
+                    int returned = sequence;
+                    archiveReturned(returned, loan);
+                    sequenceByLoan.remove(loan);
+                    write(() -> {
+                        unindex(loan);
+                        loansBySequence.remove(returned);
+                    });
+                }
+                compactIfDue();
+            }
+        } finally {
+            saveLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Saves the loans as {@link #save} would, but with one archive write for the returns and
+     * one journal record for the whole batch, which is replayed all or nothing. Nothing in
+     * memory changes unless both writes succeed.
+     */
+    @Override
+    public void saveAll(List<Loan> loans) {
+        long start = System.nanoTime();
+        try {
+            synchronized (saveLock) {
+                Map<Integer, Loan> borrowed = new LinkedHashMap<>();
+                Map<Integer, Loan> returned = new LinkedHashMap<>();
+                Set<Loan> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (Loan loan : loans) {
+                    if (!seen.add(loan)) continue;
+                    Integer sequence = sequenceByLoan.get(loan);
+                    if (sequence == null) {
+                        sequence = nextSequence++;
+                        borrowed.put(sequence, loan);
+                        if (!loan.isActive()) {
+                            returned.put(sequence, loan);
+                        }
+                    } else if (!loan.isActive()) {
+                        returned.put(sequence, loan);
+                    }
+                }
+                archive.append(returned);
+                journal.appendBatch(borrowed, returned.keySet());
+
+                for (Loan loan : returned.values()) {
+                    sequenceByLoan.remove(loan);
+                }
+                for (Map.Entry<Integer, Loan> entry : borrowed.entrySet()) {
+                    if (!returned.containsKey(entry.getKey())) {
+                        sequenceByLoan.put(entry.getValue(), entry.getKey());
+                    }
+                }
+                write(() -> {
+                    for (Map.Entry<Integer, Loan> entry : returned.entrySet()) {
+                        if (loansBySequence.remove(entry.getKey()) != null) {
+                            unindex(entry.getValue());
+                        }
+                    }
+                    for (Map.Entry<Integer, Loan> entry : borrowed.entrySet()) {
+                        if (!returned.containsKey(entry.getKey())) {
+                            loansBySequence.put(entry.getKey(), entry.getValue());
+                            index(entry.getValue());
+                        }
+                    }
+                });
+                compactIfDue();
+            }
+        } finally {
+            saveLatency.recordSince(start);
+        }
     }
 
     @Override
     public List<Loan> findAllActiveLoans() {
-        return loanStore.stream()
-                .filter(Loan::isActive)
-                .collect(Collectors.toList());
+        return read(() -> stillActive(activeLoans));
     }
 
     @Override
     public List<Loan> findActiveLoansByUser(User user) {
-        return loanStore.stream()
-                .filter(loan -> loan.isActive() && loan.getUser().equals(user))
-                .collect(Collectors.toList());
+        return read(() -> stillActive(activeLoansByUser.getOrDefault(user.getId(), Collections.emptySet())));
+    }
+
+    /** Kept up to date by saves, so a loan returned but not saved again still counts. */
+    @Override
+    public LoanSummary getLoanSummary(User user) {
+        return read(() -> summaries.get(user.getId()));
+    }
+
+    @Override
+    public Optional<Loan> findActiveLoanByItem(String itemId) {
+        return read(() -> Optional.ofNullable(activeLoanByItem.get(itemId)).filter(Loan::isActive));
+    }
+
+    /**
+     * Active loans due strictly before {@code date}, earliest due date first. Loans due on
+     * or after {@code date} are never visited.
+     */
+    @Override
+    public List<Loan> findLoansDueBefore(LocalDate date) {
+        return read(() -> {
+            List<Loan> result = new ArrayList<>();
+            for (Set<Loan> dueThatDay : activeLoansByDueDate.headMap(date, false).values()) {
+                result.addAll(stillActive(dueThatDay));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public List<Loan> findLoansDueBetween(LocalDate from, LocalDate to) {
+        return read(() -> {
+            List<Loan> result = new ArrayList<>();
+            if (!from.isBefore(to)) return result;
+            for (Set<Loan> dueThatDay : activeLoansByDueDate.subMap(from, true, to, false).values()) {
+                result.addAll(stillActive(dueThatDay));
+            }
+            return result;
+        });
+    }
+
+    /** Reads the loans in sequence order, {@link BatchedStream#BATCH_SIZE} at a time under the read lock. */
+    @Override
+    public Stream<Loan> streamActiveLoans() {
+        return BatchedStream.of(new Supplier<List<Loan>>() {
+            private int after = -1;
+
+            @Override
+            public List<Loan> get() {
+                return read(() -> {
+                    List<Loan> batch = new ArrayList<>(BatchedStream.BATCH_SIZE);
+                    for (Map.Entry<Integer, Loan> entry : loansBySequence.tailMap(after, false).entrySet()) {
+                        after = entry.getKey();
+                        if (entry.getValue().isActive()) {
+                            batch.add(entry.getValue());
+                            if (batch.size() == BatchedStream.BATCH_SIZE) break;
+                        }
+                    }
+                    return batch;
+                });
+            }
+        });
+    }
+
+    /**
+     * Reads whole due dates at a time under the read lock, until a batch holds at least
+     * {@link BatchedStream#BATCH_SIZE} loans. Loans saved or returned on dates the stream
+     * has not reached yet are reflected.
+     */
+    @Override
+    public Stream<Loan> streamLoansDueBefore(LocalDate date) {
+        return BatchedStream.of(new Supplier<List<Loan>>() {
+            private LocalDate after;
+
+            @Override
+            public List<Loan> get() {
+                return read(() -> {
+                    List<Loan> batch = new ArrayList<>();
+                    Map<LocalDate, Set<Loan>> remaining = after == null
+                        ? activeLoansByDueDate.headMap(date, false)
+                        : activeLoansByDueDate.subMap(after, false, date, false);
+                    for (Map.Entry<LocalDate, Set<Loan>> dueThatDay : remaining.entrySet()) {
+                        after = dueThatDay.getKey();
+                        batch.addAll(stillActive(dueThatDay.getValue()));
+                        if (batch.size() >= BatchedStream.BATCH_SIZE) break;
+                    }
+                    return batch;
+                });
+            }
+        });
+    }
+
+    /** Reads the archive without holding the repository lock, so saves are never blocked by it. */
+    @Override
+    public List<Loan> findLoanHistoryByUser(String userId) {
+        long start = System.nanoTime();
+        try {
+            List<Loan> history = archive.findByUser(userId);
+            history.addAll(read(() -> stillActive(activeLoansByUser.getOrDefault(userId, Collections.emptySet()))));
+            return history;
+        } finally {
+            historyLatency.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<Loan> findLoanHistoryByItem(String itemId) {
+        long start = System.nanoTime();
+        try {
+            List<Loan> history = archive.findByItem(itemId);
+            findActiveLoanByItem(itemId).ifPresent(history::add);
+            return history;
+        } finally {
+            historyLatency.recordSince(start);
+        }
+    }
+
+    /** Applies an index update under the exclusive lock. Callers hold the save lock. */
+    private void write(Runnable update) {
+        lock.writeLock().lock();
+        try {
+            update.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
-    private void saveToFile() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(FILE_NAME))) {
-            oos.writeObject(new ArrayList<>(loanStore));
-        } catch (IOException e) {
-            LOGGER.severe("Could not save loans: " + e.getMessage());
+    /** Reads {@code loansBySequence} under the save lock alone, so queries are not held up by the snapshot write. */
+    private void compactIfDue() {
+        if (journal.isCompactionDue()) {
+            journal.compact(loansBySequence, nextSequence);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private List<Loan> loadFromFile() {
-        File file = new File(FILE_NAME);
-        if (file.exists()) {
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                return (List<Loan>) ois.readObject();
-            } catch (IOException | ClassNotFoundException e) {
-                LOGGER.severe("Could not load loans: " + e.getMessage());
+    private <T> T read(Supplier<T> query) {
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void index(Loan loan) {
+        activeLoans.add(loan);
+        activeLoansByUser.computeIfAbsent(loan.getUser().getId(), id -> new LinkedHashSet<>()).add(loan);
+        activeLoanByItem.put(loan.getItem().getId(), loan);
+        activeLoansByDueDate.computeIfAbsent(loan.getDueDate(), d -> new LinkedHashSet<>()).add(loan);
+        summaries.add(loan.getUser().getId(), loan.getDueEpochDay());
+    }
+
+    private void unindex(Loan loan) {
+        activeLoans.remove(loan);
+        activeLoanByItem.remove(loan.getItem().getId(), loan);
+        removeFromBucket(activeLoansByUser, loan.getUser().getId(), loan);
+        removeFromBucket(activeLoansByDueDate, loan.getDueDate(), loan);
+        summaries.remove(loan.getUser().getId(), loan.getDueEpochDay());
+    }
+
+    private static <K> void removeFromBucket(Map<K, Set<Loan>> index, K key, Loan loan) {
+        Set<Loan> bucket = index.get(key);
+        if (bucket != null) {
+            bucket.remove(loan);
+            if (bucket.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static List<Loan> stillActive(Collection<Loan> candidates) {
+        List<Loan> result = new ArrayList<>(candidates.size());
+        for (Loan loan : candidates) {
+            if (loan.isActive()) {
+                result.add(loan);
             }
         }
-        return new ArrayList<>();
+        return result;
+    }
+
+    /** The archive is written before the journal records a return, so a crash in between only duplicates the loan. */
+    private void archiveReturned(int sequence, Loan loan) {
+        archive.append(Collections.singletonMap(sequence, loan));
+        journal.appendReturn(sequence);
+    }
+
+    /**
+     * Loads the active loans. Returned loans still found in files written before archiving
+     * existed are archived, and the snapshot is rewritten without them.
+     */
+    private void loadFromFile(EntityResolver resolver) {
+        LoadedLoans loaded = journal.replay(resolver);
+        archive.append(loaded.unarchived);
+        nextSequence = loaded.nextSequence;
+        if (loaded.needsCompaction) {
+            // Archived loans are told apart by sequence number, so never hand out one of theirs
+            // again; the compaction below keeps the new start in the snapshot header.
+            nextSequence = Math.max(nextSequence, archive.highestSequence() + 1);
+        }
+        for (Map.Entry<Integer, Loan> entry : loaded.active.entrySet()) {
+            Loan loan = entry.getValue();
+            loansBySequence.put(entry.getKey(), loan);
+            sequenceByLoan.put(loan, entry.getKey());
+            loan.getItem().setBorrowed(true);
+            index(loan);
+        }
+        if (!loaded.unarchived.isEmpty() || loaded.needsCompaction) {
+            journal.compact(loansBySequence, nextSequence);
+        }
     }
-}
\ No newline at end of file
+}
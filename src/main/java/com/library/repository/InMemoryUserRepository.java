@@ -1,12 +1,21 @@
 package com.library.repository;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import com.library.domain.User;
+import com.library.metrics.MetricsRegistry;
 
 public class InMemoryUserRepository implements UserRepository {
-    private final Map<String, User> userStore = new HashMap<>();
+    private final Map<String, User> userStore = new ConcurrentHashMap<>();
+
+    public InMemoryUserRepository() {
+        this(MetricsRegistry.getDefault());
+    }
+
+    public InMemoryUserRepository(MetricsRegistry metrics) {
+        metrics.gauge("users.count", userStore, Map::size);
+    }
 
     @Override
     public User save(User user) {
@@ -2,10 +2,31 @@ package com.library.repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 import com.library.domain.LibraryItem;
 
 public interface ItemRepository {
     void save(LibraryItem item);
     Optional<LibraryItem> findById(String id);
     List<LibraryItem> searchByTitle(String title);
-}
\ No newline at end of file
+    /** Case-insensitive substring match against title, author/artist and ID. */
+    List<LibraryItem> search(String query);
+
+    /** Streams the matches of {@link #searchByTitle}, resolving each item only when it is reached. */
+    default Stream<LibraryItem> streamByTitle(String title) {
+        return searchByTitle(title).stream();
+    }
+
+    /** Streams the matches of {@link #search}, resolving each item only when it is reached. */
+    default Stream<LibraryItem> streamSearch(String query) {
+        return search(query).stream();
+    }
+
+    default Page<LibraryItem> searchByTitle(String title, PageRequest<LibraryItem> request) {
+        return request.select(streamByTitle(title));
+    }
+
+    default Page<LibraryItem> search(String query, PageRequest<LibraryItem> request) {
+        return request.select(streamSearch(query));
+    }
+}
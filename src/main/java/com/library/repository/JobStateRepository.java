@@ -0,0 +1,10 @@
+package com.library.repository;
+
+public interface JobStateRepository {
+    /** The job has never completed a run. */
+    long NEVER_RUN = Long.MIN_VALUE;
+
+    /** The epoch day of the job's last completed run, or {@link #NEVER_RUN}. */
+    long getLastRun(String jobName);
+    void setLastRun(String jobName, long epochDay);
+}
@@ -0,0 +1,30 @@
+package com.library.repository;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.library.domain.Loan;
+
+/** Loans recovered from the snapshot and journal, keyed by their journal sequence number. */
+final class LoadedLoans {
+    final Map<Integer, Loan> active = new LinkedHashMap<>();
+    /** Returned loans found in files written before archiving existed; they still need archiving. */
+    final Map<Integer, Loan> unarchived = new LinkedHashMap<>();
+    int nextSequence;
+    /**
+     * Set when the files on disk should be rewritten: after dropping a torn journal record,
+     * or after a corrupt snapshot or journal record once the files have been copied aside.
+     * The dropped records may have used sequence numbers beyond {@link #nextSequence}, and
+     * the archive may already hold loans under them.
+     */
+    boolean needsCompaction;
+
+    void add(int sequence, Loan loan) {
+        if (loan.isActive()) {
+            active.put(sequence, loan);
+        } else {
+            unarchived.put(sequence, loan);
+        }
+        nextSequence = Math.max(nextSequence, sequence + 1);
+    }
+}
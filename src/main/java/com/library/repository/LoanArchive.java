@@ -0,0 +1,437 @@
+package com.library.repository;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.library.domain.LibraryItem;
+import com.library.domain.Loan;
+import com.library.domain.User;
+import com.library.metrics.LatencyHistogram;
+import com.library.metrics.MetricsRegistry;
+
+/**
+ * Cold storage for returned loans.
+ * <p>
+ * Returned loans are appended to an open segment. After {@code segmentRecords} records
+ * the open segment is sealed: the append renames it to {@code segment-NNNNNN.sealing} and
+ * a background thread gzip-compresses it into {@code segment-NNNNNN.gz} and deletes it, so
+ * a save never waits for compression. Sealed segments never change. Each record carries
+ * the loan's journal sequence number, so a loan archived twice around a crash is reported
+ * only once.
+ * <p>
+ * Queries copy the open segment under the append lock, which only ever waits for one
+ * append, and read the sealed segments without any lock, building {@link Loan} objects only
+ * for matching records and resolving their item and user ids against the live
+ * repositories. The first query to read a sealed segment keeps the hash codes of the item
+ * and user ids in it, so later queries skip the segments that cannot hold a match instead
+ * of inflating every one.
+ */
+final class LoanArchive {
+    private static final Logger LOGGER = Logger.getLogger(LoanArchive.class.getName());
+
+    static final int DEFAULT_SEGMENT_RECORDS = 10_000;
+
+    private static final String OPEN_SEGMENT = "open.seg";
+    private static final String SEALED_PREFIX = "segment-";
+    private static final String SEALED_SUFFIX = ".gz";
+    private static final String SEALING_SUFFIX = ".sealing";
+
+    // One thread compresses for every archive; sealing is rare and the work is I/O bound.
+    private static final ExecutorService SEALER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "loan-archive-sealer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File directory;
+    private final File openSegment;
+    private final int segmentRecords;
+    private final ItemRepository itemRepository;
+    private final UserRepository userRepository;
+    private final Object appendLock = new Object();
+    private final Map<Integer, SegmentIndex> indexes = new ConcurrentHashMap<>();
+    private final LatencyHistogram sealLatency;
+    private int openRecords;
+    private long openLength;
+    private int nextSegment = 1;
+
+    /** Either repository may be {@code null}, in which case found loans refer to placeholders. */
+    LoanArchive(File directory, int segmentRecords, ItemRepository itemRepository, UserRepository userRepository,
+            MetricsRegistry metrics) {
+        this.directory = directory;
+        this.openSegment = new File(directory, OPEN_SEGMENT);
+        this.segmentRecords = segmentRecords;
+        this.itemRepository = itemRepository;
+        this.userRepository = userRepository;
+        this.sealLatency = metrics.histogram("loans.archive.seal");
+        recover();
+    }
+
+    /**
+     * Appends returned loans in the given order, sealing the open segment whenever it fills
+     * up. Throws {@link UncheckedIOException} if they could not be written, after cutting off
+     * whatever part of them reached the open segment.
+     */
+    void append(Map<Integer, Loan> returnedLoans) {
+        if (returnedLoans.isEmpty()) return;
+        synchronized (appendLock) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new UncheckedIOException(new IOException("Could not create archive directory " + directory));
+            }
+            ByteArrayOutputStream records = new ByteArrayOutputStream(128 * returnedLoans.size());
+            DataOutputStream out = new DataOutputStream(records);
+            try {
+                for (Map.Entry<Integer, Loan> entry : returnedLoans.entrySet()) {
+                    out.writeInt(entry.getKey());
+                    LoanCodec.writeLoan(out, entry.getValue(), false);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not encode archived loan", e);
+            }
+            try (FileOutputStream file = new FileOutputStream(openSegment, true)) {
+                records.writeTo(file);
+            } catch (IOException e) {
+                truncateOpenSegment();
+                throw new UncheckedIOException("Could not archive loans", e);
+            }
+            openLength += records.size();
+            openRecords += returnedLoans.size();
+            if (openRecords >= segmentRecords) {
+                seal();
+            }
+        }
+    }
+
+    List<Loan> findByUser(String userId) {
+        return find(userId, null);
+    }
+
+    List<Loan> findByItem(String itemId) {
+        return find(null, itemId);
+    }
+
+    /**
+     * The highest journal sequence number in the archive, or -1 if it is empty. Reads every
+     * sealed segment not indexed yet, so it is meant for recovery, not for every startup.
+     */
+    int highestSequence() {
+        Set<Integer> sealed;
+        byte[] open;
+        synchronized (appendLock) {
+            sealed = sealedSegmentNumbers();
+            open = readOpenSegment();
+        }
+        int highest = -1;
+        for (int segment : sealed) {
+            SegmentIndex index = indexes.get(segment);
+            if (index == null) {
+                SegmentIndex.Builder builder = new SegmentIndex.Builder();
+                try (InputStream in = openSealed(segment)) {
+                    scan(in, Long.MAX_VALUE, null, null, null, null, null, builder);
+                } catch (IOException e) {
+                    LOGGER.severe("Could not read archive segment " + segment + ": " + e.getMessage());
+                    continue;
+                }
+                index = builder.build();
+                indexes.put(segment, index);
+            }
+            highest = Math.max(highest, index.highestSequence);
+        }
+        SegmentIndex.Builder openIndex = new SegmentIndex.Builder();
+        try {
+            scan(new ByteArrayInputStream(open), open.length, null, null, null, null, null, openIndex);
+        } catch (IOException e) {
+            LOGGER.severe("Could not read open archive segment: " + e.getMessage());
+        }
+        return Math.max(highest, openIndex.build().highestSequence);
+    }
+
+    /** Sealed segments, counting those still waiting to be compressed. */
+    int getSealedSegmentCount() {
+        synchronized (appendLock) {
+            return sealedSegmentNumbers().size();
+        }
+    }
+
+    private List<Loan> find(String userId, String itemId) {
+        String id = userId != null ? userId : itemId;
+        List<Loan> result = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        EntityResolver resolver = EntityResolver.lookupOnly(itemRepository, userRepository);
+        Set<Integer> sealed;
+        byte[] open;
+        synchronized (appendLock) {
+            // A segment is renamed to .sealing under this lock, so the two agree.
+            sealed = sealedSegmentNumbers();
+            open = readOpenSegment();
+        }
+        for (int segment : sealed) {
+            SegmentIndex index = indexes.get(segment);
+            if (index != null && !index.mayContain(id)) continue;
+            SegmentIndex.Builder builder = index == null ? new SegmentIndex.Builder() : null;
+            try (InputStream in = openSealed(segment)) {
+                scan(in, Long.MAX_VALUE, userId, itemId, resolver, seen, result, builder);
+                if (builder != null) {
+                    indexes.put(segment, builder.build());
+                }
+            } catch (IOException e) {
+                LOGGER.severe("Could not read archive segment " + segment + ": " + e.getMessage());
+            }
+        }
+        try {
+            scan(new ByteArrayInputStream(open), open.length, userId, itemId, resolver, seen, result, null);
+        } catch (IOException e) {
+            LOGGER.severe("Could not read open archive segment: " + e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * The complete records of the open segment. Appends write the bytes before they count
+     * them in {@code openLength}, so everything up to it is whole.
+     */
+    private byte[] readOpenSegment() {
+        byte[] bytes = new byte[(int) openLength];
+        if (bytes.length == 0) return bytes;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(openSegment))) {
+            in.readFully(bytes);
+        } catch (IOException e) {
+            LOGGER.severe("Could not read open archive segment: " + e.getMessage());
+            return new byte[0];
+        }
+        return bytes;
+    }
+
+    /** Opens a sealed segment, compressed or not; one being compressed right now is read from the result. */
+    private InputStream openSealed(int segment) throws IOException {
+        File compressed = new File(directory, segmentName(segment, SEALED_SUFFIX));
+        if (!compressed.exists()) {
+            try {
+                return new FileInputStream(new File(directory, segmentName(segment, SEALING_SUFFIX)));
+            } catch (FileNotFoundException e) {
+                // Compressed and deleted since the check.
+            }
+        }
+        return new GZIPInputStream(new FileInputStream(compressed), 1 << 16);
+    }
+
+    /**
+     * Reads records until {@code limit} bytes or the end of the stream. Item and user IDs
+     * are compared before a record is turned into a {@link Loan}. Every record is added to
+     * {@code index}, if given; with no {@code result} list nothing else is done.
+     */
+    private static void scan(InputStream stream, long limit, String userId, String itemId, EntityResolver resolver,
+            Set<Integer> seen, List<Loan> result, SegmentIndex.Builder index) throws IOException {
+        CountingInputStream counter = new CountingInputStream(new BufferedInputStream(stream, 1 << 16));
+        DataInputStream in = new DataInputStream(counter);
+        while (counter.getPosition() < limit) {
+            int sequence;
+            try {
+                sequence = in.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            byte tag = in.readByte();
+            boolean reference = tag == LoanCodec.REFERENCE;
+            byte kind = reference ? in.readByte() : tag;
+            String id = in.readUTF();
+            String title = reference ? null : in.readUTF();
+            String creator = reference ? null : in.readUTF();
+            String uid;
+            User embedded = null;
+            if (reference) {
+                uid = in.readUTF();
+            } else {
+                embedded = LoanCodec.readEmbeddedUser(in);
+                uid = embedded.getId();
+            }
+            long borrowDay = in.readLong();
+            boolean active = in.readBoolean();
+            if (index != null) {
+                index.add(sequence, id, uid);
+            }
+            if (result == null) continue;
+            if ((userId != null && !userId.equals(uid)) || (itemId != null && !itemId.equals(id))) continue;
+            if (!seen.add(sequence)) continue;
+
+            LibraryItem item = reference ? resolver.item(kind, id) : resolver.item(LoanCodec.newItem(kind, id, title, creator));
+            User user = reference ? resolver.user(uid) : resolver.user(embedded);
+            result.add(LoanCodec.newLoan(item, user, borrowDay, active));
+        }
+    }
+
+    /** Renames the full open segment and leaves its compression to the sealer thread. */
+    private void seal() {
+        int segment = nextSegment;
+        File sealing = new File(directory, segmentName(segment, SEALING_SUFFIX));
+        try {
+            Files.move(openSegment.toPath(), sealing.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.severe("Could not seal archive segment: " + e.getMessage());
+            return;
+        }
+        nextSegment++;
+        openRecords = 0;
+        openLength = 0;
+        SEALER.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                compress(sealing, segment);
+            } catch (IOException e) {
+                LOGGER.severe("Could not compress " + sealing.getName() + ", the next startup will: " + e.getMessage());
+            } finally {
+                sealLatency.recordSince(start);
+            }
+        });
+    }
+
+    private void compress(File sealing, int segment) throws IOException {
+        File target = new File(directory, segmentName(segment, SEALED_SUFFIX));
+        File tmp = new File(directory, segmentName(segment, ".tmp"));
+        try (InputStream in = new BufferedInputStream(new FileInputStream(sealing));
+             OutputStream out = new GZIPOutputStream(new FileOutputStream(tmp), 1 << 16)) {
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(sealing.toPath());
+    }
+
+    /**
+     * Finishes a seal interrupted by a crash, then counts the records in the open segment
+     * and cuts off a torn record at its end. The directory is only created by the first append.
+     */
+    private void recover() {
+        if (!directory.isDirectory()) return;
+        File[] sealed = sealedSegments();
+        nextSegment = sealed.length == 0 ? 1 : segmentNumber(sealed[sealed.length - 1]) + 1;
+        File[] interrupted = directory.listFiles((dir, name) -> name.endsWith(SEALING_SUFFIX));
+        if (interrupted != null) {
+            Arrays.sort(interrupted);
+            for (File sealing : interrupted) {
+                int segment = segmentNumber(sealing);
+                try {
+                    compress(sealing, segment);
+                    nextSegment = Math.max(nextSegment, segment + 1);
+                } catch (IOException e) {
+                    LOGGER.severe("Could not finish sealing " + sealing.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+        if (!openSegment.exists()) return;
+
+        try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(openSegment)))) {
+            DataInputStream in = new DataInputStream(counter);
+            EntityResolver resolver = new EntityResolver(null, null);
+            long complete = 0;
+            try {
+                while (true) {
+                    in.readInt();
+                    LoanCodec.readLoan(in, resolver);
+                    openRecords++;
+                    complete = counter.getPosition();
+                }
+            } catch (EOFException e) {
+                openLength = complete;
+            }
+        } catch (IOException e) {
+            LOGGER.severe("Could not read open archive segment: " + e.getMessage());
+            openLength = openSegment.length();
+        }
+        if (openLength < openSegment.length()) {
+            LOGGER.warning("Ignoring incomplete record at the end of " + openSegment.getName());
+            truncateOpenSegment();
+        }
+    }
+
+    /** Cuts the open segment back to its complete records. */
+    private void truncateOpenSegment() {
+        try (RandomAccessFile file = new RandomAccessFile(openSegment, "rw")) {
+            if (file.length() > openLength) {
+                file.setLength(openLength);
+            }
+        } catch (IOException e) {
+            LOGGER.severe("Could not truncate open archive segment: " + e.getMessage());
+        }
+    }
+
+    private File[] sealedSegments() {
+        File[] segments = directory.listFiles((dir, name) -> name.startsWith(SEALED_PREFIX) && name.endsWith(SEALED_SUFFIX));
+        if (segments == null) return new File[0];
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private Set<Integer> sealedSegmentNumbers() {
+        Set<Integer> numbers = new TreeSet<>();
+        File[] segments = directory.listFiles((dir, name) -> name.startsWith(SEALED_PREFIX)
+            && (name.endsWith(SEALED_SUFFIX) || name.endsWith(SEALING_SUFFIX)));
+        if (segments != null) {
+            for (File segment : segments) {
+                numbers.add(segmentNumber(segment));
+            }
+        }
+        return numbers;
+    }
+
+    private static String segmentName(int segment, String suffix) {
+        return String.format("%s%06d%s", SEALED_PREFIX, segment, suffix);
+    }
+
+    private static int segmentNumber(File segment) {
+        String name = segment.getName();
+        return Integer.parseInt(name.substring(SEALED_PREFIX.length(), name.indexOf('.')));
+    }
+
+    /** The hash codes of every item and user id in a sealed segment, sorted, and its highest sequence number. */
+    private static final class SegmentIndex {
+        private final int[] idHashes;
+        final int highestSequence;
+
+        private SegmentIndex(int[] idHashes, int highestSequence) {
+            this.idHashes = idHashes;
+            this.highestSequence = highestSequence;
+        }
+
+        /** False only if no record in the segment has {@code id} as its item or user id. */
+        boolean mayContain(String id) {
+            return Arrays.binarySearch(idHashes, id.hashCode()) >= 0;
+        }
+
+        static final class Builder {
+            private int[] hashes = new int[256];
+            private int size;
+            private int highestSequence = -1;
+
+            void add(int sequence, String itemId, String userId) {
+                if (size + 2 > hashes.length) {
+                    hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                }
+                hashes[size++] = itemId.hashCode();
+                hashes[size++] = userId.hashCode();
+                highestSequence = Math.max(highestSequence, sequence);
+            }
+
+            SegmentIndex build() {
+                return new SegmentIndex(Arrays.stream(hashes, 0, size).sorted().distinct().toArray(), highestSequence);
+            }
+        }
+    }
+}
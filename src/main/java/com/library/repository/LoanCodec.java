@@ -0,0 +1,84 @@
+package com.library.repository;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+
+import com.library.domain.Book;
+import com.library.domain.CD;
+import com.library.domain.LibraryItem;
+import com.library.domain.Loan;
+import com.library.domain.User;
+
+/**
+ * Binary encoding of a single loan, used for journal and archive records. A record refers
+ * to its item and user by id only, so no user data is copied into the loan files; the
+ * item's kind is kept so a loan whose item is gone still gets the right loan period.
+ * Records written before that embed the whole item and user, and are still read, as are
+ * snapshots of format version 1, which consist of them.
+ */
+final class LoanCodec {
+    static final byte BOOK = 'B';
+    static final byte COMPACT_DISC = 'C';
+    // Takes the place of the item kind that starts an embedded record.
+    static final byte REFERENCE = 'R';
+
+    private LoanCodec() {
+    }
+
+    /**
+     * Writes the loan with an explicit status rather than {@link Loan#isActive()}, which
+     * another thread may change while the record is being written.
+     */
+    static void writeLoan(DataOutput out, Loan loan, boolean active) throws IOException {
+        LibraryItem item = loan.getItem();
+        out.writeByte(REFERENCE);
+        out.writeByte(kindOf(item));
+        out.writeUTF(item.getId());
+        out.writeUTF(loan.getUser().getId());
+        out.writeLong(loan.getBorrowDate().toEpochDay());
+        out.writeBoolean(active);
+    }
+
+    static Loan readLoan(DataInput in, EntityResolver resolver) throws IOException {
+        byte tag = in.readByte();
+        LibraryItem item;
+        User user;
+        if (tag == REFERENCE) {
+            item = resolver.item(in.readByte(), in.readUTF());
+            user = resolver.user(in.readUTF());
+        } else {
+            item = resolver.item(newItem(tag, in.readUTF(), in.readUTF(), in.readUTF()));
+            user = resolver.user(readEmbeddedUser(in));
+        }
+        return newLoan(item, user, in.readLong(), in.readBoolean());
+    }
+
+    static Loan newLoan(LibraryItem item, User user, long borrowEpochDay, boolean active) {
+        Loan loan = new Loan(item, user, LocalDate.ofEpochDay(borrowEpochDay));
+        if (!active) {
+            loan.returnItem();
+        }
+        return loan;
+    }
+
+    static byte kindOf(LibraryItem item) throws IOException {
+        if (item instanceof Book) return BOOK;
+        if (item instanceof CD) return COMPACT_DISC;
+        throw new IOException("Unsupported item type " + item.getClass().getSimpleName());
+    }
+
+    static LibraryItem newItem(byte kind, String id, String title, String creator) throws IOException {
+        if (kind == BOOK) return new Book(id, title, creator);
+        if (kind == COMPACT_DISC) return new CD(id, title, creator);
+        throw new IOException("Unknown item type " + kind);
+    }
+
+    /** Reads the user embedded in a record written before loans referred to users by id. */
+    static User readEmbeddedUser(DataInput in) throws IOException {
+        User user = new User(in.readUTF(), in.readUTF(), in.readUTF());
+        user.setFinesOwed(in.readDouble());
+        return user;
+    }
+}
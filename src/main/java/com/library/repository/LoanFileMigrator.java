@@ -0,0 +1,63 @@
+package com.library.repository;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.library.domain.Loan;
+
+/**
+ * One-shot conversion of a {@code loans.dat} written with Java serialization into the
+ * compact snapshot format. The original file is kept next to it with a {@code .legacy}
+ * suffix.
+ * <p>
+ * {@link InMemoryLoanRepository} runs this automatically on startup; it can also be run on
+ * its own: {@code java com.library.repository.LoanFileMigrator loans.dat}.
+ */
+public final class LoanFileMigrator {
+    private static final Logger LOGGER = Logger.getLogger(LoanFileMigrator.class.getName());
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+
+    private LoanFileMigrator() {
+    }
+
+    public static boolean isLegacyFormat(String fileName) {
+        File file = new File(fileName);
+        if (!file.isFile() || file.length() < 2) return false;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readUnsignedShort() == JAVA_SERIALIZATION_MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Converts {@code fileName} in place and returns the number of loans migrated. */
+    public static int migrate(String fileName) throws IOException {
+        File file = new File(fileName);
+        List<Loan> loans = readLegacy(file);
+        Files.copy(file.toPath(), new File(fileName + ".legacy").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        LoanSnapshotFile.write(file, loans);
+        LOGGER.info("Migrated " + loans.size() + " loans in " + fileName + " to the compact format");
+        return loans.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<Loan> readLegacy(File file) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (List<Loan>) ois.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a serialized loan list: " + e.getMessage(), e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String fileName = args.length > 0 ? args[0] : "loans.dat";
+        if (!isLegacyFormat(fileName)) {
+            LOGGER.info(fileName + " does not need migration.");
+            return;
+        }
+        migrate(fileName);
+    }
+}
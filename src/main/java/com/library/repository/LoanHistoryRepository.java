@@ -0,0 +1,11 @@
+package com.library.repository;
+
+import java.util.List;
+import com.library.domain.Loan;
+
+/** Loan history, including returned loans that have been moved out of the active store. */
+public interface LoanHistoryRepository {
+    /** Returned loans in the order they were returned, followed by the active ones. */
+    List<Loan> findLoanHistoryByUser(String userId);
+    List<Loan> findLoanHistoryByItem(String itemId);
+}
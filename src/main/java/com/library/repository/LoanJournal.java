@@ -0,0 +1,272 @@
+package com.library.repository;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.library.domain.Loan;
+import com.library.metrics.LatencyHistogram;
+import com.library.metrics.MetricsRegistry;
+
+/**
+ * Append-only persistence for active loans.
+ * <p>
+ * Every change is appended to a journal file as one small record, so the cost of a save
+ * does not depend on how many loans were made before. Once the journal holds as many
+ * records as the snapshot, the active loans are written to a fresh snapshot and the journal
+ * is truncated, which keeps the amortized cost per save constant. Returned loans live in
+ * the {@link LoanArchive}, not here. The snapshot format itself is described in
+ * {@link LoanSnapshotFile}.
+ * <p>
+ * A batch of borrows and returns is written as one record that wraps the individual records
+ * with their total length, so a batch cut short by a crash is dropped as a whole on replay.
+ * A record that cannot be written is cut off again and the save fails with an
+ * {@link UncheckedIOException}; its sequence number is not reused.
+ */
+class LoanJournal {
+    private static final Logger LOGGER = Logger.getLogger(LoanJournal.class.getName());
+
+    static final int MIN_COMPACTION_THRESHOLD = 1_000;
+    static final String CORRUPT_SUFFIX = ".corrupt";
+
+    private static final byte BORROW = 1;
+    // Written before returned loans were archived; such loans are archived during replay.
+    private static final byte RETURN = 2;
+    private static final byte ARCHIVED_RETURN = 3;
+    private static final byte BATCH = 4;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private int snapshotRecords;
+    private int journalRecords;
+    private final LatencyHistogram appendLatency;
+    private final LatencyHistogram compactLatency;
+
+    LoanJournal(String fileName, MetricsRegistry metrics) {
+        this.snapshotFile = new File(fileName);
+        this.journalFile = new File(fileName + ".journal");
+        this.appendLatency = metrics.histogram("loans.journal.append");
+        this.compactLatency = metrics.histogram("loans.journal.compact");
+    }
+
+    /**
+     * Rebuilds the loans from the last snapshot followed by every journal record.
+     * A torn record at the end of the journal (e.g. after a crash) ends the replay.
+     * A snapshot still in the old Java serialization format is migrated first. Items and
+     * users are mapped to canonical instances through {@code resolver}.
+     * <p>
+     * An unreadable snapshot or a corrupt record before the end of the journal is not a
+     * crash artifact, and the compaction that follows would discard everything after it.
+     * Both files are therefore copied aside with a {@value #CORRUPT_SUFFIX} suffix first,
+     * and loading fails if they cannot be.
+     */
+    LoadedLoans replay(EntityResolver resolver) {
+        LoadedLoans loaded = new LoadedLoans();
+        if (snapshotFile.exists()) {
+            try {
+                if (LoanFileMigrator.isLegacyFormat(snapshotFile.getPath())) {
+                    LoanFileMigrator.migrate(snapshotFile.getPath());
+                }
+                loaded = LoanSnapshotFile.read(snapshotFile, resolver);
+            } catch (IOException e) {
+                LOGGER.severe("Could not load loans: " + e.getMessage() + ". Starting without them; " + quarantine());
+                loaded = new LoadedLoans();
+                loaded.needsCompaction = true;
+                return loaded;
+            }
+        }
+        snapshotRecords = loaded.active.size();
+
+        if (journalFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+                while (in.available() > 0) {
+                    journalRecords += applyRecord(in, loaded, resolver);
+                }
+            } catch (EOFException e) {
+                LOGGER.warning("Ignoring incomplete record at the end of " + journalFile.getName());
+                loaded.needsCompaction = true;
+            } catch (IOException e) {
+                LOGGER.severe("Could not replay loan journal: " + e.getMessage()
+                    + ". Later records are skipped; " + quarantine());
+                loaded.needsCompaction = true;
+            }
+        }
+        return loaded;
+    }
+
+    /** Copies the snapshot and journal aside, keeping copies from earlier failures. */
+    private String quarantine() {
+        StringBuilder copies = new StringBuilder("copies kept as");
+        for (File original : new File[] {snapshotFile, journalFile}) {
+            if (!original.exists()) continue;
+            File copy = new File(original.getPath() + CORRUPT_SUFFIX);
+            for (int n = 1; copy.exists(); n++) {
+                copy = new File(original.getPath() + CORRUPT_SUFFIX + "." + n);
+            }
+            try {
+                Files.copy(original.toPath(), copy.toPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not keep a copy of " + original.getName()
+                    + "; refusing to load loans over it", e);
+            }
+            copies.append(' ').append(copy.getName());
+        }
+        return copies.toString();
+    }
+
+    void appendBorrow(int sequence, Loan loan) {
+        append(out -> {
+            out.writeByte(BORROW);
+            out.writeInt(sequence);
+            LoanCodec.writeLoan(out, loan, true);
+        });
+    }
+
+    /** Records that the loan was returned and has already been written to the archive. */
+    void appendReturn(int sequence) {
+        append(out -> {
+            out.writeByte(ARCHIVED_RETURN);
+            out.writeInt(sequence);
+        });
+    }
+
+    /**
+     * Records new loans and archived returns with a single write. Borrows come first, so a
+     * loan may be borrowed and returned in the same batch.
+     */
+    void appendBatch(Map<Integer, Loan> borrowed, Collection<Integer> returned) {
+        if (borrowed.isEmpty() && returned.isEmpty()) return;
+        append(borrowed.size() + returned.size(), out -> {
+            ByteArrayOutputStream records = new ByteArrayOutputStream(64 + 64 * borrowed.size());
+            DataOutputStream batch = new DataOutputStream(records);
+            for (Map.Entry<Integer, Loan> entry : borrowed.entrySet()) {
+                batch.writeByte(BORROW);
+                batch.writeInt(entry.getKey());
+                LoanCodec.writeLoan(batch, entry.getValue(), true);
+            }
+            for (int sequence : returned) {
+                batch.writeByte(ARCHIVED_RETURN);
+                batch.writeInt(sequence);
+            }
+            out.writeByte(BATCH);
+            out.writeInt(borrowed.size() + returned.size());
+            out.writeInt(records.size());
+            records.writeTo(out);
+        });
+    }
+
+    boolean isCompactionDue() {
+        return journalRecords >= Math.max(MIN_COMPACTION_THRESHOLD, snapshotRecords);
+    }
+
+    private void append(RecordWriter writer) {
+        append(1, writer);
+    }
+
+    /**
+     * Writes one record, or throws {@link UncheckedIOException} and cuts off whatever part
+     * of it reached the file, so the records after it are not read as garbage.
+     */
+    private void append(int records, RecordWriter writer) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream(128);
+        try {
+            writer.write(new DataOutputStream(record));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not encode loan", e);
+        }
+        long start = System.nanoTime();
+        long length = journalFile.length();
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            record.writeTo(out);
+        } catch (IOException e) {
+            truncate(length);
+            throw new UncheckedIOException("Could not save loans", e);
+        } finally {
+            appendLatency.recordSince(start);
+        }
+        journalRecords += records;
+    }
+
+    private void truncate(long length) {
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            if (file.length() > length) {
+                file.setLength(length);
+            }
+        } catch (IOException e) {
+            LOGGER.severe("Could not cut a failed record off " + journalFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the active loans to a new snapshot and empties the journal. The snapshot is
+     * written to a temporary file first so a crash never leaves a half-written snapshot behind.
+     */
+    void compact(Map<Integer, Loan> activeLoans, int nextSequence) {
+        long start = System.nanoTime();
+        try {
+            writeSnapshot(activeLoans, nextSequence);
+        } finally {
+            compactLatency.recordSince(start);
+        }
+    }
+
+    private void writeSnapshot(Map<Integer, Loan> activeLoans, int nextSequence) {
+        try {
+            LoanSnapshotFile.write(snapshotFile, activeLoans, nextSequence);
+        } catch (IOException e) {
+            LOGGER.severe("Could not write loan snapshot: " + e.getMessage());
+            return;
+        }
+        try {
+            new FileOutputStream(journalFile).close();
+            snapshotRecords = activeLoans.size();
+            journalRecords = 0;
+        } catch (IOException e) {
+            LOGGER.severe("Could not truncate loan journal: " + e.getMessage());
+        }
+    }
+
+    /** Applies the next record and returns how many loan records it held. */
+    private static int applyRecord(DataInputStream in, LoadedLoans loaded, EntityResolver resolver) throws IOException {
+        byte type = in.readByte();
+        int sequence = in.readInt();
+        if (type == BATCH) {
+            // A batch has its record count where other records have a sequence number.
+            // Read the whole batch before applying any of it, so a torn batch changes nothing.
+            byte[] records = new byte[in.readInt()];
+            in.readFully(records);
+            DataInputStream batch = new DataInputStream(new ByteArrayInputStream(records));
+            for (int i = 0; i < sequence; i++) {
+                applyRecord(batch, loaded, resolver);
+            }
+            return sequence;
+        }
+        if (type == BORROW) {
+            Loan loan = LoanCodec.readLoan(in, resolver);
+            // A save that failed after taking its sequence number leaves a gap, nothing more.
+            if (sequence < loaded.nextSequence) {
+                throw new IOException("Out of order loan record " + sequence);
+            }
+            loaded.add(sequence, loan);
+        } else if (type == RETURN || type == ARCHIVED_RETURN) {
+            Loan loan = loaded.active.remove(sequence);
+            if (loan == null) {
+                throw new IOException("Return for unknown loan " + sequence);
+            }
+            loan.returnItem();
+            if (type == RETURN) {
+                loaded.unarchived.put(sequence, loan);
+            }
+        } else {
+            throw new IOException("Unknown journal record type " + type);
+        }
+        return 1;
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
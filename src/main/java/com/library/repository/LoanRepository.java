@@ -1,11 +1,78 @@
 package com.library.repository;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 import com.library.domain.Loan;
+import com.library.domain.LoanSummary;
 import com.library.domain.User;
 
 public interface LoanRepository {
     void save(Loan loan);
     List<Loan> findAllActiveLoans();
     List<Loan> findActiveLoansByUser(User user);
-}
\ No newline at end of file
+    Optional<Loan> findActiveLoanByItem(String itemId);
+    List<Loan> findLoansDueBefore(LocalDate date);
+
+    /** Active loans due on or after {@code from} and before {@code to}, earliest first. */
+    default List<Loan> findLoansDueBetween(LocalDate from, LocalDate to) {
+        List<Loan> result = new ArrayList<>();
+        for (Loan loan : findLoansDueBefore(to)) {
+            if (!loan.getDueDate().isBefore(from)) {
+                result.add(loan);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The user's active loan count and earliest due day. Implementations that keep the
+     * summary up to date as loans are saved answer without reading the user's loans.
+     */
+    default LoanSummary getLoanSummary(User user) {
+        List<Loan> loans = findActiveLoansByUser(user);
+        long earliest = Long.MAX_VALUE;
+        for (Loan loan : loans) {
+            earliest = Math.min(earliest, loan.getDueEpochDay());
+        }
+        return LoanSummary.of(loans.size(), earliest);
+    }
+
+    /** Saves each loan as {@link #save} would. Implementations may persist the batch with one write. */
+    default void saveAll(List<Loan> loans) {
+        for (Loan loan : loans) {
+            save(loan);
+        }
+    }
+
+    /**
+     * Streams the same loans as the list queries, in the same order. Implementations may
+     * read them in batches instead of copying the whole result up front, so whether saves
+     * made while a stream is being consumed show up in it depends on the implementation.
+     */
+    default Stream<Loan> streamActiveLoans() {
+        return findAllActiveLoans().stream();
+    }
+
+    default Stream<Loan> streamActiveLoansByUser(User user) {
+        return findActiveLoansByUser(user).stream();
+    }
+
+    default Stream<Loan> streamLoansDueBefore(LocalDate date) {
+        return findLoansDueBefore(date).stream();
+    }
+
+    default Page<Loan> findActiveLoans(PageRequest<Loan> request) {
+        return request.select(streamActiveLoans());
+    }
+
+    default Page<Loan> findActiveLoansByUser(User user, PageRequest<Loan> request) {
+        return request.select(streamActiveLoansByUser(user));
+    }
+
+    default Page<Loan> findLoansDueBefore(LocalDate date, PageRequest<Loan> request) {
+        return request.select(streamLoansDueBefore(date));
+    }
+}
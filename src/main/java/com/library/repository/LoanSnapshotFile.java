@@ -0,0 +1,221 @@
+package com.library.repository;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.library.domain.LibraryItem;
+import com.library.domain.Loan;
+import com.library.domain.User;
+
+/**
+ * Reads and writes loan snapshots.
+ * <p>
+ * Version 4 (written) starts with the next journal sequence number, then stores every
+ * distinct item and user id once in a dictionary, then items as rows of kind and id and
+ * users as rows of id, then loans as fixed-width {@value #LOAN_RECORD_BYTES}-byte rows of
+ * sequence, item, user, borrow day, due day and status. Items and users are resolved by id
+ * on load, so the snapshot holds no user data. It is read whole into a heap buffer rather
+ * than mapped, because a live mapping would keep Windows from moving the next snapshot over
+ * the file. Version 3 (read only) also stores item titles and creators and user names,
+ * passwords and fines. Version 2 (read only) is version 3 without the sequence numbers,
+ * which are then the row positions. Version 1 (read only) stores one {@link LoanCodec}
+ * record per loan.
+ */
+final class LoanSnapshotFile {
+    static final int MAGIC = 0x4C4F414E; // "LOAN"
+    static final int STREAM_VERSION = 1;
+    static final int UNSEQUENCED_VERSION = 2;
+    static final int COMPACT_VERSION = 3;
+    static final int REFERENCE_VERSION = 4;
+    static final int LOAN_RECORD_BYTES = 21;
+
+    private static final byte ACTIVE = 1;
+
+    private LoanSnapshotFile() {
+    }
+
+    /** Writes {@code loans} with their current status, numbered by their position in the list. */
+    static void write(File target, List<Loan> loans) throws IOException {
+        Map<Integer, Loan> numbered = new LinkedHashMap<>();
+        for (Loan loan : loans) {
+            numbered.put(numbered.size(), loan);
+        }
+        write(target, numbered, numbered.size(), false);
+    }
+
+    /**
+     * Writes the loans of the active store. They are all stored as active: a loan returned
+     * but not saved yet is still in the store, and its return is journaled later.
+     */
+    static void write(File target, Map<Integer, Loan> activeLoans, int nextSequence) throws IOException {
+        write(target, activeLoans, nextSequence, true);
+    }
+
+    /** Writes a version 4 snapshot to a temporary file and then moves it over {@code target}. */
+    private static void write(File target, Map<Integer, Loan> loans, int nextSequence, boolean allActive) throws IOException {
+        File tmp = new File(target.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            writeCompact(out, loans, nextSequence, allActive);
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static LoadedLoans read(File file, EntityResolver resolver) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = readFully(channel);
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException("Unrecognized snapshot format");
+            }
+            int version = buffer.getInt();
+            if (version >= UNSEQUENCED_VERSION && version <= REFERENCE_VERSION) {
+                return readCompact(buffer, resolver, version);
+            }
+            if (version == STREAM_VERSION) {
+                return readStream(file, resolver);
+            }
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot is too large: " + size + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Snapshot shrank while being read");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeCompact(DataOutputStream out, Map<Integer, Loan> loans, int nextSequence, boolean allActive)
+            throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        Map<String, LibraryItem> items = new LinkedHashMap<>();
+        Map<String, User> users = new LinkedHashMap<>();
+        for (Loan loan : loans.values()) {
+            LibraryItem item = items.computeIfAbsent(loan.getItem().getId(), id -> loan.getItem());
+            User user = users.computeIfAbsent(loan.getUser().getId(), id -> loan.getUser());
+            intern(strings, item.getId(), user.getId());
+        }
+        Map<String, Integer> itemRefs = positions(items.keySet());
+        Map<String, Integer> userRefs = positions(users.keySet());
+
+        out.writeInt(MAGIC);
+        out.writeInt(REFERENCE_VERSION);
+        out.writeInt(nextSequence);
+        out.writeInt(strings.size());
+        for (String s : strings.keySet()) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.writeInt(items.size());
+        for (LibraryItem item : items.values()) {
+            out.writeByte(LoanCodec.kindOf(item));
+            out.writeInt(strings.get(item.getId()));
+        }
+        out.writeInt(users.size());
+        for (User user : users.values()) {
+            out.writeInt(strings.get(user.getId()));
+        }
+        out.writeInt(loans.size());
+        for (Map.Entry<Integer, Loan> entry : loans.entrySet()) {
+            Loan loan = entry.getValue();
+            out.writeInt(entry.getKey());
+            out.writeInt(itemRefs.get(loan.getItem().getId()));
+            out.writeInt(userRefs.get(loan.getUser().getId()));
+            out.writeInt((int) loan.getBorrowDate().toEpochDay());
+            out.writeInt((int) loan.getDueDate().toEpochDay());
+            out.writeByte(allActive || loan.isActive() ? ACTIVE : 0);
+        }
+    }
+
+    private static LoadedLoans readCompact(ByteBuffer buffer, EntityResolver resolver, int version) throws IOException {
+        boolean sequenced = version >= COMPACT_VERSION;
+        boolean embedded = version < REFERENCE_VERSION;
+        try {
+            LoadedLoans loaded = new LoadedLoans();
+            loaded.nextSequence = sequenced ? buffer.getInt() : 0;
+            String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            LibraryItem[] items = new LibraryItem[buffer.getInt()];
+            for (int i = 0; i < items.length; i++) {
+                byte kind = buffer.get();
+                items[i] = embedded
+                    ? resolver.item(LoanCodec.newItem(kind, strings[buffer.getInt()], strings[buffer.getInt()], strings[buffer.getInt()]))
+                    : resolver.item(kind, strings[buffer.getInt()]);
+            }
+            User[] users = new User[buffer.getInt()];
+            for (int i = 0; i < users.length; i++) {
+                if (embedded) {
+                    User user = new User(strings[buffer.getInt()], strings[buffer.getInt()], strings[buffer.getInt()]);
+                    user.setFinesOwed(buffer.getDouble());
+                    users[i] = resolver.user(user);
+                } else {
+                    users[i] = resolver.user(strings[buffer.getInt()]);
+                }
+            }
+            int loanCount = buffer.getInt();
+            int rowBytes = sequenced ? LOAN_RECORD_BYTES : LOAN_RECORD_BYTES - 4;
+            if (buffer.remaining() != (long) loanCount * rowBytes) {
+                throw new IOException("Snapshot is truncated or has trailing data");
+            }
+            for (int i = 0; i < loanCount; i++) {
+                int sequence = sequenced ? buffer.getInt() : i;
+                LibraryItem item = items[buffer.getInt()];
+                User user = users[buffer.getInt()];
+                int borrowDay = buffer.getInt();
+                buffer.getInt(); // due day, derived again from the item's loan period
+                loaded.add(sequence, LoanCodec.newLoan(item, user, borrowDay, buffer.get() == ACTIVE));
+            }
+            return loaded;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt snapshot: " + e, e);
+        }
+    }
+
+    private static LoadedLoans readStream(File file, EntityResolver resolver) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            in.readInt();
+            in.readInt();
+            int count = in.readInt();
+            LoadedLoans loaded = new LoadedLoans();
+            for (int i = 0; i < count; i++) {
+                loaded.add(i, LoanCodec.readLoan(in, resolver));
+            }
+            return loaded;
+        }
+    }
+
+    private static void intern(Map<String, Integer> strings, String... values) {
+        for (String value : values) {
+            strings.putIfAbsent(value, strings.size());
+        }
+    }
+
+    private static Map<String, Integer> positions(Iterable<String> keys) {
+        Map<String, Integer> refs = new LinkedHashMap<>();
+        for (String key : keys) {
+            refs.put(key, refs.size());
+        }
+        return refs;
+    }
+}
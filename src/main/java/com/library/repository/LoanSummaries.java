@@ -0,0 +1,48 @@
+package com.library.repository;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.library.domain.LoanSummary;
+
+/**
+ * A {@link LoanSummary} per user, updated as active loans are indexed and unindexed so a
+ * lookup never walks the user's loans. Each user keeps a count of active loans per due day;
+ * the summary is rebuilt on every change and shared by readers. Not thread-safe: callers
+ * guard it with their repository lock.
+ */
+final class LoanSummaries {
+    private final Map<String, Tracker> byUser = new HashMap<>();
+
+    void add(String userId, long dueEpochDay) {
+        Tracker tracker = byUser.computeIfAbsent(userId, id -> new Tracker());
+        tracker.dueDays.merge(dueEpochDay, 1, Integer::sum);
+        tracker.update(1);
+    }
+
+    void remove(String userId, long dueEpochDay) {
+        Tracker tracker = byUser.get(userId);
+        if (tracker == null || !tracker.dueDays.containsKey(dueEpochDay)) return;
+        tracker.dueDays.computeIfPresent(dueEpochDay, (day, n) -> n == 1 ? null : n - 1);
+        tracker.update(-1);
+        if (!tracker.summary.hasActiveLoans()) {
+            byUser.remove(userId);
+        }
+    }
+
+    LoanSummary get(String userId) {
+        Tracker tracker = byUser.get(userId);
+        return tracker == null ? LoanSummary.NONE : tracker.summary;
+    }
+
+    private static final class Tracker {
+        final TreeMap<Long, Integer> dueDays = new TreeMap<>();
+        LoanSummary summary = LoanSummary.NONE;
+
+        void update(int change) {
+            int active = summary.getActiveLoans() + change;
+            summary = LoanSummary.of(active, active == 0 ? Long.MAX_VALUE : dueDays.firstKey());
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.library.repository;
+
+import java.util.Collections;
+import java.util.List;
+
+/** One page of a query result and the request it answers. */
+public final class Page<T> {
+    private final List<T> content;
+    private final PageRequest<T> request;
+    private final boolean hasNext;
+
+    Page(List<T> content, PageRequest<T> request, boolean hasNext) {
+        this.content = Collections.unmodifiableList(content);
+        this.request = request;
+        this.hasNext = hasNext;
+    }
+
+    public List<T> getContent() { return content; }
+    public PageRequest<T> getRequest() { return request; }
+    public boolean hasNext() { return hasNext; }
+
+    /** The request for the following page; only meaningful when {@link #hasNext()} is true. */
+    public PageRequest<T> nextRequest() {
+        return request.next();
+    }
+}
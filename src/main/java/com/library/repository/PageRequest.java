@@ -0,0 +1,106 @@
+package com.library.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Which slice of a query result to return: {@code limit} results starting at {@code offset},
+ * optionally after sorting. Offsets count positions in the result as it is when the page is
+ * read, so results added or removed in between can shift entries across pages.
+ */
+public final class PageRequest<T> {
+    private final int offset;
+    private final int limit;
+    private final Comparator<? super T> sort;
+
+    private PageRequest(int offset, int limit, Comparator<? super T> sort) {
+        if (offset < 0) throw new IllegalArgumentException("offset must not be negative: " + offset);
+        if (limit < 1) throw new IllegalArgumentException("limit must be positive: " + limit);
+        this.offset = offset;
+        this.limit = limit;
+        this.sort = sort;
+    }
+
+    public static <T> PageRequest<T> of(int offset, int limit) {
+        return new PageRequest<>(offset, limit, null);
+    }
+
+    public static <T> PageRequest<T> first(int limit) {
+        return of(0, limit);
+    }
+
+    public PageRequest<T> sortedBy(Comparator<? super T> comparator) {
+        return new PageRequest<>(offset, limit, comparator);
+    }
+
+    /** The request for the page after this one, with the same size and order. */
+    public PageRequest<T> next() {
+        return new PageRequest<>(offset + limit, limit, sort);
+    }
+
+    public int getOffset() { return offset; }
+    public int getLimit() { return limit; }
+
+    /**
+     * Cuts this page out of {@code results} and closes the stream. Unsorted requests stop
+     * reading one element past the page. Sorted requests read everything but only keep the
+     * first {@code offset + limit + 1} elements in a heap; ties keep their encounter order.
+     */
+    public Page<T> select(Stream<T> results) {
+        try (Stream<T> stream = results) {
+            return sort == null ? selectInOrder(stream) : selectSorted(stream);
+        }
+    }
+
+    private Page<T> selectInOrder(Stream<T> results) {
+        List<T> content = new ArrayList<>(limit);
+        Iterator<T> it = results.skip(offset).limit(limit + 1L).iterator();
+        while (it.hasNext() && content.size() < limit) {
+            content.add(it.next());
+        }
+        return new Page<>(content, this, it.hasNext());
+    }
+
+    private Page<T> selectSorted(Stream<T> results) {
+        Comparator<Ranked<T>> order = Comparator.<Ranked<T>, T>comparing(r -> r.value, sort)
+            .thenComparingLong(r -> r.rank);
+        long keep = (long) offset + limit + 1;
+        PriorityQueue<Ranked<T>> smallest = new PriorityQueue<>(order.reversed());
+        long[] rank = {0};
+        results.forEachOrdered(value -> {
+            Ranked<T> candidate = new Ranked<>(value, rank[0]++);
+            if (smallest.size() < keep) {
+                smallest.add(candidate);
+            } else if (order.compare(candidate, smallest.peek()) < 0) {
+                smallest.poll();
+                smallest.add(candidate);
+            }
+        });
+        List<Ranked<T>> sorted = new ArrayList<>(smallest);
+        sorted.sort(order);
+        if (sorted.size() <= offset) {
+            return new Page<>(Collections.<T>emptyList(), this, false);
+        }
+        int end = (int) Math.min(sorted.size(), (long) offset + limit);
+        List<T> content = new ArrayList<>(end - offset);
+        for (Ranked<T> ranked : sorted.subList(offset, end)) {
+            content.add(ranked.value);
+        }
+        return new Page<>(content, this, sorted.size() > end);
+    }
+
+    private static final class Ranked<T> {
+        final T value;
+        final long rank;
+
+        Ranked(T value, long rank) {
+            this.value = value;
+            this.rank = rank;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.library.repository;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * Append-only file of records keyed by ID, the storage behind {@link FileItemRepository}
+ * and {@link FileUserRepository}.
+ * <p>
+ * Each record is {@code [op][id length][id][body length][body]}; a later record for the
+ * same ID supersedes an earlier one and a delete record removes it. Opening a log reads the
+ * file in large windows and walks the record headers to build an ID-to-offset index without decoding any
+ * bodies; {@link #get} reads a single body on demand. Once superseded records make up more
+ * than half of the file it is rewritten with only the live records. The file is never
+ * memory-mapped, since Windows refuses to truncate or replace a file with a live mapping.
+ * <p>
+ * Reads share a read lock; appends and compaction take the write lock.
+ */
+final class RecordLog implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(RecordLog.class.getName());
+
+    static final int MIN_COMPACTION_THRESHOLD = 10_000;
+
+    private static final int MAGIC = 0x4C524543; // "LREC"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 8;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int MAX_RECORD_HEADER_BYTES = 1 + 2 + 0xFFFF + 4;
+    private static final int SCAN_WINDOW_BYTES = 1 << 20;
+
+    private final File file;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Replaced wholesale when the file is reopened, so unlocked readers of the key set see
+    // either the old or the new index and never a half-built one.
+    private volatile Map<String, Long> bodyOffsets;
+    private FileChannel channel;
+    private long size;
+    private long deadRecords;
+
+    RecordLog(String fileName) {
+        this.file = new File(fileName);
+        try {
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open " + fileName, e);
+        }
+    }
+
+    /** Returns the stored body for {@code id}, or {@code null} if there is none. */
+    byte[] get(String id) {
+        lock.readLock().lock();
+        try {
+            Long offset = bodyOffsets.get(id);
+            return offset == null ? null : readBody(offset);
+        } catch (IOException e) {
+            LOGGER.severe("Could not read record " + id + " from " + file.getName() + ": " + e.getMessage());
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean contains(String id) {
+        return bodyOffsets.containsKey(id);
+    }
+
+    Set<String> ids() {
+        return bodyOffsets.keySet();
+    }
+
+    int size() {
+        return bodyOffsets.size();
+    }
+
+    void put(String id, byte[] body) {
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 2 + key.length + 4 + body.length);
+        record.put(PUT).putShort((short) key.length).put(key).putInt(body.length).put(body).flip();
+        lock.writeLock().lock();
+        try {
+            if (append(record)) {
+                if (bodyOffsets.put(id, size - body.length) != null) {
+                    deadRecords++;
+                }
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void delete(String id) {
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 2 + key.length + 4);
+        record.put(DELETE).putShort((short) key.length).put(key).putInt(0).flip();
+        lock.writeLock().lock();
+        try {
+            if (bodyOffsets.containsKey(id) && append(record)) {
+                bodyOffsets.remove(id);
+                deadRecords += 2;
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean append(ByteBuffer record) {
+        try {
+            if (channel == null) {
+                create();
+            }
+            long position = size;
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            size = position;
+            return true;
+        } catch (IOException e) {
+            LOGGER.severe("Could not append to " + file.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (deadRecords < Math.max(MIN_COMPACTION_THRESHOLD, bodyOffsets.size())) return;
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (String id : new ArrayList<>(bodyOffsets.keySet())) {
+                byte[] key = id.getBytes(StandardCharsets.UTF_8);
+                byte[] body = readBody(bodyOffsets.get(id));
+                out.writeByte(PUT);
+                out.writeShort(key.length);
+                out.write(key);
+                out.writeInt(body.length);
+                out.write(body);
+            }
+        } catch (IOException e) {
+            LOGGER.severe("Could not compact " + file.getName() + ": " + e.getMessage());
+            return;
+        }
+        try {
+            // Windows cannot replace a file that is still open.
+            channel.close();
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.severe("Could not compact " + file.getName() + ": " + e.getMessage());
+            tmp.delete();
+        }
+        try {
+            open();
+        } catch (IOException e) {
+            // Appends and reads fail on the closed channel and are logged; nothing is overwritten.
+            LOGGER.severe("Could not reopen " + file.getName() + " after compaction: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the file and indexes every record. A record cut short at the end of the file
+     * (e.g. after a crash) is discarded. A missing file is only created by the first write.
+     */
+    private void open() throws IOException {
+        Map<String, Long> offsets = new ConcurrentHashMap<>();
+        deadRecords = 0;
+        if (!file.exists() || file.length() < FILE_HEADER_BYTES) {
+            channel = null;
+            size = 0;
+            bodyOffsets = offsets;
+            return;
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException(file.getName() + " is not a record log");
+        }
+        long end = scan(offsets);
+        bodyOffsets = offsets;
+        if (end < size) {
+            LOGGER.warning("Ignoring incomplete record at the end of " + file.getName());
+            try {
+                channel.truncate(end);
+            } catch (IOException e) {
+                // The next append overwrites the torn record anyway, since it writes at size.
+                LOGGER.warning("Could not truncate " + file.getName() + ": " + e.getMessage());
+            }
+            size = end;
+        }
+    }
+
+    private void create() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        size = 0;
+        while (header.hasRemaining()) {
+            size += channel.write(header, size);
+        }
+    }
+
+    /** Walks the record headers through windows read from the file and returns where the last complete record ends. */
+    private long scan(Map<String, Long> offsets) throws IOException {
+        long position = FILE_HEADER_BYTES;
+        ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW_BYTES);
+        window.limit(0);
+        long windowStart = 0;
+        while (position < size) {
+            long windowEnd = windowStart + window.limit();
+            if (position + MAX_RECORD_HEADER_BYTES > windowEnd && windowEnd < size) {
+                windowStart = position;
+                window.clear();
+                window.limit((int) Math.min(size - position, SCAN_WINDOW_BYTES));
+                readFully(window, position);
+            }
+            int at = (int) (position - windowStart);
+            if (window.limit() - at < 1 + 2) break;
+            byte op = window.get(at);
+            int keyLength = window.getShort(at + 1) & 0xFFFF;
+            if (window.limit() - at < 1 + 2 + keyLength + 4) break;
+            byte[] key = new byte[keyLength];
+            window.position(at + 3);
+            window.get(key);
+            int bodyLength = window.getInt(at + 3 + keyLength);
+            long bodyOffset = position + 3 + keyLength + 4;
+            if (bodyLength < 0 || bodyOffset + bodyLength > size) break;
+
+            String id = new String(key, StandardCharsets.UTF_8);
+            if (op == PUT) {
+                if (offsets.put(id, bodyOffset) != null) deadRecords++;
+            } else if (op == DELETE) {
+                if (offsets.remove(id) != null) deadRecords++;
+                deadRecords++;
+            } else {
+                throw new IOException("Unknown record type " + op + " in " + file.getName());
+            }
+            position = bodyOffset + bodyLength;
+        }
+        return position;
+    }
+
+    private byte[] readBody(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(length, offset - 4);
+        ByteBuffer body = ByteBuffer.allocate(length.getInt(0));
+        readFully(body, offset);
+        return body.array();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new EOFException();
+            position += read;
+        }
+    }
+
+    static byte[] encode(RecordWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            writer.write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static DataInputStream decode(byte[] body) {
+        return new DataInputStream(new ByteArrayInputStream(body));
+    }
+
+    @FunctionalInterface
+    interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
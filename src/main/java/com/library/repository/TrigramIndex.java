@@ -0,0 +1,112 @@
+package com.library.repository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Inverted index from every three-character substring of a set of text fields to the keys
+ * whose fields contain it.
+ * <p>
+ * A query of three or more characters is answered by intersecting the posting lists of its
+ * own trigrams and then confirming each remaining candidate with {@code contains}, so the
+ * result is exactly what a case-insensitive scan would return. Shorter queries have no
+ * trigram to look up and fall back to checking every key.
+ * <p>
+ * Lookups may run concurrently with updates. Callers must not update the same key from
+ * two threads at once; posting lists themselves are updated atomically per trigram.
+ */
+class TrigramIndex {
+    private static final int GRAM_LENGTH = 3;
+
+    private final Map<String, Set<String>> postings = new ConcurrentHashMap<>();
+    private final Map<String, String[]> fieldsByKey = new ConcurrentHashMap<>();
+
+    /** Indexes {@code key} under the given fields, replacing anything indexed for it before. */
+    void put(String key, String... fields) {
+        remove(key);
+        String[] lowered = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            lowered[i] = fields[i] == null ? "" : fields[i].toLowerCase();
+        }
+        for (String gram : gramsOf(lowered)) {
+            postings.compute(gram, (g, keys) -> {
+                Set<String> bucket = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+                bucket.add(key);
+                return bucket;
+            });
+        }
+        fieldsByKey.put(key, lowered);
+    }
+
+    void remove(String key) {
+        String[] lowered = fieldsByKey.remove(key);
+        if (lowered == null) return;
+        for (String gram : gramsOf(lowered)) {
+            postings.computeIfPresent(gram, (g, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    /**
+     * Keys where any of the first {@code fieldLimit} fields contains {@code query},
+     * ignoring case.
+     */
+    List<String> search(String query, int fieldLimit) {
+        return stream(query, fieldLimit).collect(Collectors.toList());
+    }
+
+    /** Like {@link #search}, but each candidate is only confirmed when the stream reaches it. */
+    Stream<String> stream(String query, int fieldLimit) {
+        String needle = query.toLowerCase();
+        return candidates(needle).filter(key -> {
+            String[] fields = fieldsByKey.get(key);
+            return fields != null && matches(fields, needle, fieldLimit);
+        });
+    }
+
+    private Stream<String> candidates(String needle) {
+        if (needle.length() < GRAM_LENGTH) {
+            return fieldsByKey.keySet().stream();
+        }
+        List<Set<String>> lists = new ArrayList<>();
+        for (String gram : gramsOf(needle)) {
+            Set<String> keys = postings.get(gram);
+            if (keys == null) return Stream.empty();
+            lists.add(keys);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        return lists.get(0).stream().filter(key -> inAll(lists, key));
+    }
+
+    private static boolean inAll(List<Set<String>> lists, String key) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(key)) return false;
+        }
+        return true;
+    }
+
+    private static boolean matches(String[] fields, String needle, int fieldLimit) {
+        for (int i = 0; i < fields.length && i < fieldLimit; i++) {
+            if (fields[i].contains(needle)) return true;
+        }
+        return false;
+    }
+
+    private static Set<String> gramsOf(String... texts) {
+        Set<String> grams = new HashSet<>();
+        for (String text : texts) {
+            for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+                grams.add(text.substring(i, i + GRAM_LENGTH));
+            }
+        }
+        return grams;
+    }
+}
@@ -0,0 +1,190 @@
+package com.library.service;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.library.domain.User;
+
+/**
+ * Delivers notifications on a pool of worker threads so the caller never waits for a slow
+ * {@link com.library.observer.Observer}.
+ * <p>
+ * Notifications go through a bounded queue. When it is full, {@link #submit} blocks until a
+ * worker makes room, so a burst can never exhaust memory. Each worker takes up to
+ * {@code batchSize} notifications per wake-up. Workers are virtual threads when the
+ * runtime supports them and daemon platform threads otherwise.
+ */
+public class AsyncNotificationDispatcher {
+    private static final Logger LOGGER = Logger.getLogger(AsyncNotificationDispatcher.class.getName());
+
+    private final BiConsumer<User, String> delivery;
+    private final BlockingQueue<Notification> queue;
+    private final int batchSize;
+    private final ExecutorService workers;
+    private final Object idle = new Object();
+    private int pending;
+    private boolean closed;
+
+    public AsyncNotificationDispatcher(BiConsumer<User, String> delivery, int workerCount, int queueCapacity, int batchSize) {
+        if (workerCount < 1 || queueCapacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Worker count, queue capacity and batch size must be positive");
+        }
+        this.delivery = delivery;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.workers = Executors.newFixedThreadPool(workerCount, workerThreadFactory());
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::runWorker);
+        }
+    }
+
+    /**
+     * Queues a notification, blocking while the queue is full. If the caller is interrupted
+     * while waiting, or the dispatcher is closed, the notification is delivered on the
+     * calling thread instead of being dropped.
+     */
+    public void submit(User user, String message) {
+        Notification notification = new Notification(user, message);
+        boolean inline;
+        // Checked and counted under the lock close() takes, so close() always waits for it.
+        synchronized (idle) {
+            inline = closed;
+            if (!inline) {
+                pending++;
+            }
+        }
+        if (inline) {
+            deliver(notification);
+            return;
+        }
+        try {
+            while (!queue.offer(notification, 100, TimeUnit.MILLISECONDS)) {
+                if (workers.isShutdown()) {
+                    deliver(notification);
+                    completed(1);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            deliver(notification);
+            completed(1);
+            return;
+        }
+        if (workers.isShutdown()) {
+            // Queued after close() stopped the workers and drained the queue.
+            deliverQueued();
+        }
+    }
+
+    /** Waits until every submitted notification has been delivered. */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (idle) {
+            while (pending > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(idle, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Flushes outstanding notifications and stops the workers. Later submissions are
+     * delivered on the calling thread.
+     */
+    public void close(long timeout, TimeUnit unit) throws InterruptedException {
+        synchronized (idle) {
+            closed = true;
+        }
+        flush(timeout, unit);
+        workers.shutdownNow();
+        // Whatever the workers did not get to before the timeout is delivered here.
+        deliverQueued();
+    }
+
+    public int getPendingCount() {
+        synchronized (idle) {
+            return pending;
+        }
+    }
+
+    private void runWorker() {
+        List<Notification> batch = new ArrayList<>(batchSize);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                for (Notification notification : batch) {
+                    deliver(notification);
+                }
+                completed(batch.size());
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deliverQueued() {
+        Notification notification;
+        while ((notification = queue.poll()) != null) {
+            deliver(notification);
+            completed(1);
+        }
+    }
+
+    private void deliver(Notification notification) {
+        try {
+            delivery.accept(notification.user, notification.message);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Notification to " + notification.user.getId() + " failed", e);
+        }
+    }
+
+    private void completed(int count) {
+        synchronized (idle) {
+            pending -= count;
+            if (pending == 0) {
+                idle.notifyAll();
+            }
+        }
+    }
+
+    private static ThreadFactory workerThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(ofVirtual.invoke(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return runnable -> {
+                Thread thread = new Thread(runnable, "notification-dispatch-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    private static final class Notification {
+        private final User user;
+        private final String message;
+
+        private Notification(User user, String message) {
+            this.user = user;
+            this.message = message;
+        }
+    }
+}
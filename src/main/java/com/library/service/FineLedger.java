@@ -0,0 +1,169 @@
+package com.library.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.library.domain.FineEntry;
+import com.library.domain.Loan;
+import com.library.domain.Money;
+import com.library.domain.User;
+import com.library.metrics.Counter;
+import com.library.metrics.LatencyHistogram;
+import com.library.metrics.MetricsRegistry;
+import com.library.repository.FineLedgerRepository;
+import com.library.repository.LoanRepository;
+import com.library.repository.UserRepository;
+
+/**
+ * Charges fines for overdue loans day by day.
+ * <p>
+ * The ledger remembers the last day it has charged. {@link #accrue()} charges each overdue
+ * loan for the days after that watermark (or after its due date, if later) up to today, so
+ * a run after days of downtime catches up in one pass over the overdue loans and a second
+ * run on the same day charges nothing. A loan {@code n} days late owes
+ * {@code calculateFine(n)}, so a charge is the difference between the fine at the end and
+ * at the start of its range.
+ * <p>
+ * Every charge becomes a {@link FineEntry} on the user's statement and is added to
+ * {@link User#getFineBalance()}, the running balance that borrowing and payments read. The
+ * entries and the new watermark are written before the balances, so a crash in between
+ * leaves charges on the statement that are missing from the balance, never a double charge.
+ * Balances change only once the ledger has stored the entries; a ledger that cannot store
+ * them, for instance because its file could not be loaded, charges nothing.
+ */
+public class FineLedger {
+    private final LoanRepository loanRepository;
+    private final UserRepository userRepository;
+    private final FineLedgerRepository ledgerRepository;
+    private final TimeProvider timeProvider;
+    private final LatencyHistogram accrualLatency;
+    private final Counter entriesRecorded;
+
+    public FineLedger(LoanRepository loanRepository, UserRepository userRepository,
+            FineLedgerRepository ledgerRepository, TimeProvider timeProvider) {
+        this(loanRepository, userRepository, ledgerRepository, timeProvider, MetricsRegistry.getDefault());
+    }
+
+    public FineLedger(LoanRepository loanRepository, UserRepository userRepository,
+            FineLedgerRepository ledgerRepository, TimeProvider timeProvider, MetricsRegistry metrics) {
+        this.loanRepository = loanRepository;
+        this.userRepository = userRepository;
+        this.ledgerRepository = ledgerRepository;
+        this.timeProvider = timeProvider;
+        this.accrualLatency = metrics.histogram("fines.accrue");
+        this.entriesRecorded = metrics.counter("fines.entries");
+    }
+
+    /** Charges every overdue loan up to and including today. Returns the number of entries recorded. */
+    public synchronized int accrue() {
+        long start = System.nanoTime();
+        try {
+            LocalDate today = timeProvider.getDate();
+            long todayEpochDay = today.toEpochDay();
+            long watermark = ledgerRepository.getAccruedThrough();
+            if (watermark >= todayEpochDay) return 0;
+
+            List<FineEntry> entries = new ArrayList<>();
+            Map<String, User> users = new LinkedHashMap<>();
+            for (Loan loan : loanRepository.findLoansDueBefore(today)) {
+                entries.add(charge(loan, watermark, todayEpochDay));
+                users.putIfAbsent(loan.getUser().getId(), loan.getUser());
+            }
+            // With nothing overdue there is no need to move the watermark: every loan that could
+            // have owed for these days was part of the scan.
+            if (entries.isEmpty() || !ledgerRepository.append(entries, todayEpochDay)) return 0;
+            applyToBalances(entries, users);
+            entriesRecorded.add(entries.size());
+            return entries.size();
+        } finally {
+            accrualLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Charges loans that are being returned for the days since the last accrual run, up to
+     * and including today. {@code endLoans} ends the loans and saves them, which takes them
+     * out of the overdue scan; it runs under the ledger lock, so no accrual run falls between
+     * the loans leaving the scan and their charge, and each day is charged either by the last
+     * run or here. The charges are written as one batch, after {@code endLoans}, so a crash in
+     * between loses a few days of fine rather than charging them twice. Returns the amount
+     * charged for each loan, all zero if the batch could not be stored.
+     */
+    public synchronized List<Money> settle(List<Loan> loans, Runnable endLoans) {
+        endLoans.run();
+        long watermark = ledgerRepository.getAccruedThrough();
+        long today = timeProvider.getEpochDay();
+        List<Money> charged = new ArrayList<>(loans.size());
+        List<FineEntry> entries = new ArrayList<>();
+        Map<String, User> users = new LinkedHashMap<>();
+        for (Loan loan : loans) {
+            if (Math.max(watermark, loan.getDueEpochDay()) >= today) {
+                charged.add(Money.ZERO);
+                continue;
+            }
+            FineEntry entry = charge(loan, watermark, today);
+            entries.add(entry);
+            users.putIfAbsent(loan.getUser().getId(), loan.getUser());
+            charged.add(entry.getAmount());
+        }
+        if (entries.isEmpty()) {
+            return charged;
+        }
+        if (!ledgerRepository.append(entries, watermark)) {
+            return new ArrayList<>(Collections.nCopies(loans.size(), Money.ZERO));
+        }
+        applyToBalances(entries, users);
+        entriesRecorded.add(entries.size());
+        return charged;
+    }
+
+    /**
+     * Records a payment that has already been taken off the user's balance. Returns
+     * {@code false} if it could not be stored, in which case it is missing from the statement.
+     */
+    public synchronized boolean recordPayment(User user, Money amount) {
+        boolean stored = ledgerRepository.append(
+            Collections.singletonList(FineEntry.payment(user, timeProvider.getEpochDay(), amount)),
+            ledgerRepository.getAccruedThrough());
+        if (stored) {
+            entriesRecorded.increment();
+        }
+        return stored;
+    }
+
+    /** Every charge and payment for {@code user}, oldest first. */
+    public List<FineEntry> getStatement(User user) {
+        return ledgerRepository.findEntriesByUser(user.getId());
+    }
+
+    /** The last epoch day that has been charged, or {@link FineLedgerRepository#NEVER_ACCRUED}. */
+    public long getAccruedThrough() {
+        return ledgerRepository.getAccruedThrough();
+    }
+
+    /** The fine {@code loan} owes for the days after {@code watermark} (or its due day) through {@code today}. */
+    private static FineEntry charge(Loan loan, long watermark, long today) {
+        long due = loan.getDueEpochDay();
+        long from = Math.max(watermark, due);
+        Money amount = Money.of(loan.getItem().calculateFine(today - due))
+            .minus(Money.of(loan.getItem().calculateFine(from - due)));
+        return FineEntry.accrual(loan, from, today, amount);
+    }
+
+    /** Adds the charges to the instance the user repository holds, falling back to the loan's own user. */
+    private void applyToBalances(List<FineEntry> entries, Map<String, User> loanUsers) {
+        Map<String, Money> charged = new LinkedHashMap<>();
+        for (FineEntry entry : entries) {
+            charged.merge(entry.getUserId(), entry.getAmount(), Money::plus);
+        }
+        for (Map.Entry<String, Money> charge : charged.entrySet()) {
+            User user = userRepository.findById(charge.getKey()).orElse(loanUsers.get(charge.getKey()));
+            user.addFine(charge.getValue());
+            userRepository.save(user);
+        }
+    }
+}
@@ -1,17 +1,58 @@
 package com.library.service;
 
+import com.library.domain.Money;
 import com.library.domain.User;
+import com.library.metrics.Counter;
+import com.library.metrics.MetricsRegistry;
 
 public class FineService {
 
+    private final FineLedger ledger;
+    private final Counter paymentsAccepted;
+    private final Counter paymentsRejected;
+
+    public FineService() {
+        this(MetricsRegistry.getDefault());
+    }
+
+    public FineService(MetricsRegistry metrics) {
+        this(null, metrics);
+    }
+
+    /** Payments are also recorded on the user's statement in {@code ledger}. */
+    public FineService(FineLedger ledger) {
+        this(ledger, MetricsRegistry.getDefault());
+    }
+
+    public FineService(FineLedger ledger, MetricsRegistry metrics) {
+        this.ledger = ledger;
+        this.paymentsAccepted = metrics.counter("fine.payments.accepted");
+        this.paymentsRejected = metrics.counter("fine.payments.rejected");
+    }
+
+    /** The user's outstanding fines as accrued by the {@link FineLedger}; no loans are inspected. */
+    public Money getOutstandingBalance(User user) {
+        return user.getFineBalance();
+    }
+
     public boolean payFine(User user, double amount) {
-        if (amount <= 0) return false;
-        
-        double currentFines = user.getFinesOwed();
-        if (currentFines <= 0) return false;
+        return payFine(user, Money.of(amount));
+    }
 
-        double newBalance = Math.max(0, currentFines - amount);
-        user.setFinesOwed(newBalance);
+    /**
+     * Takes up to {@code amount} off the user's balance. Concurrent payments and accruals
+     * on the same user are all applied; see {@link User#payFine}.
+     */
+    public boolean payFine(User user, Money amount) {
+        Money paid = user.payFine(amount);
+        if (!paid.isPositive()) {
+            paymentsRejected.increment();
+            return false;
+        }
+        if (ledger != null) {
+            ledger.recordPayment(user, paid);
+        }
+        paymentsAccepted.increment();
         return true;
     }
 }
\ No newline at end of file
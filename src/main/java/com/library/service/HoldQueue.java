@@ -0,0 +1,66 @@
+package com.library.service;
+
+/**
+ * FIFO queue of user numbers in a growable ring buffer, 4 bytes per waiting hold. Wait
+ * lists are short, so removing from the middle by shifting is cheap enough.
+ */
+final class HoldQueue {
+    private static final int INITIAL_CAPACITY = 2;
+
+    private int[] users = new int[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+
+    void add(int user) {
+        if (size == users.length) {
+            int[] grown = new int[users.length * 2];
+            for (int i = 0; i < size; i++) {
+                grown[i] = get(i);
+            }
+            users = grown;
+            head = 0;
+        }
+        users[(head + size) % users.length] = user;
+        size++;
+    }
+
+    /** Removes and returns the first user, or -1 if the queue is empty. */
+    int poll() {
+        if (size == 0) return -1;
+        int user = users[head];
+        head = (head + 1) % users.length;
+        size--;
+        return user;
+    }
+
+    /** The 0-based position of {@code user}, or -1 if it is not waiting. */
+    int indexOf(int user) {
+        for (int i = 0; i < size; i++) {
+            if (get(i) == user) return i;
+        }
+        return -1;
+    }
+
+    boolean remove(int user) {
+        int index = indexOf(user);
+        if (index < 0) return false;
+        for (int i = index; i < size - 1; i++) {
+            users[(head + i) % users.length] = get(i + 1);
+        }
+        size--;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** The user at 0-based position {@code i}. */
+    int get(int i) {
+        return users[(head + i) % users.length];
+    }
+}
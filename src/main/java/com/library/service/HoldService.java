@@ -0,0 +1,378 @@
+package com.library.service;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.library.domain.ItemHolds;
+import com.library.domain.LibraryItem;
+import com.library.domain.Loan;
+import com.library.domain.User;
+import com.library.metrics.Counter;
+import com.library.metrics.MetricsRegistry;
+import com.library.observer.Observer;
+import com.library.observer.Subject;
+import com.library.repository.HoldRepository;
+import com.library.repository.ItemRepository;
+import com.library.repository.LoanRepository;
+import com.library.repository.UserRepository;
+
+/**
+ * Wait lists for items that are out on loan.
+ * <p>
+ * Each item has a first-come, first-served {@link HoldQueue} of user numbers; users are
+ * numbered once in a dictionary, so a waiting hold costs 4 bytes. When an item comes back
+ * it is set aside for the first user in its queue, who is notified and may pick it up for
+ * {@link #DEFAULT_PICKUP_DAYS} days while nobody else can borrow it. A hold that is not
+ * picked up in time expires on the next {@link #expireHolds()} run and the item passes to
+ * the next user. Given a {@link HoldRepository}, every change to an item's holds is stored
+ * and the holds are loaded again on startup; otherwise they are kept in memory only.
+ * <p>
+ * {@link LoanService} calls {@link #claim} after winning an item's compare-and-set and
+ * {@link #itemReturned} before it releases a returned item, so a borrower who sees the item
+ * available also sees the hold on it. Claiming checks the holder under the hold lock and
+ * marks the holder's pickup as under way, so an expiry run never mistakes another
+ * borrower's compare-and-set for the pickup. Observers are notified after the hold lock is
+ * released.
+ */
+public class HoldService implements Subject {
+    public static final int DEFAULT_PICKUP_DAYS = 7;
+
+    private final ItemRepository itemRepository;
+    private final LoanRepository loanRepository;
+    private final TimeProvider timeProvider;
+    private final HoldRepository holdRepository;
+    private final int pickupDays;
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
+    private final Counter holdsPlaced;
+    private final Counter holdsExpired;
+
+    private final List<User> users = new ArrayList<>();
+    private final Map<String, Integer> userNumbers = new HashMap<>();
+    private final Map<String, HoldQueue> waitLists = new HashMap<>();
+    private final Map<String, ReadyHold> readyHolds = new HashMap<>();
+    // Ready holds whose holder has won the item's compare-and-set and is saving the loan.
+    private final Map<String, ReadyHold> claimedHolds = new HashMap<>();
+    // Ready holds in the order they were set aside, which is also the order they expire in.
+    private final ArrayDeque<ReadyHold> readyOrder = new ArrayDeque<>();
+    private long waitingHolds;
+
+    public HoldService(ItemRepository itemRepository, LoanRepository loanRepository, TimeProvider timeProvider) {
+        this(itemRepository, loanRepository, timeProvider, DEFAULT_PICKUP_DAYS, MetricsRegistry.getDefault());
+    }
+
+    public HoldService(ItemRepository itemRepository, LoanRepository loanRepository, TimeProvider timeProvider,
+            int pickupDays, MetricsRegistry metrics) {
+        this(itemRepository, loanRepository, null, null, timeProvider, pickupDays, metrics);
+    }
+
+    /** Holds stored in {@code holdRepository}, whose users are looked up in {@code userRepository}. */
+    public HoldService(ItemRepository itemRepository, LoanRepository loanRepository, UserRepository userRepository,
+            HoldRepository holdRepository, TimeProvider timeProvider) {
+        this(itemRepository, loanRepository, userRepository, holdRepository, timeProvider, DEFAULT_PICKUP_DAYS,
+            MetricsRegistry.getDefault());
+    }
+
+    public HoldService(ItemRepository itemRepository, LoanRepository loanRepository, UserRepository userRepository,
+            HoldRepository holdRepository, TimeProvider timeProvider, int pickupDays, MetricsRegistry metrics) {
+        if (pickupDays < 1) {
+            throw new IllegalArgumentException("Pickup period must be at least one day");
+        }
+        this.itemRepository = itemRepository;
+        this.loanRepository = loanRepository;
+        this.holdRepository = holdRepository;
+        this.timeProvider = timeProvider;
+        this.pickupDays = pickupDays;
+        this.holdsPlaced = metrics.counter("holds.placed");
+        this.holdsExpired = metrics.counter("holds.expired");
+        metrics.gauge("holds.waiting", this, HoldService::getWaitingHoldCount);
+        metrics.gauge("holds.ready", this, HoldService::getReadyHoldCount);
+        if (holdRepository != null) {
+            load(userRepository);
+        }
+    }
+
+    @Override
+    public void registerObserver(Observer o) {
+        observers.add(o);
+    }
+
+    @Override
+    public void removeObserver(Observer o) {
+        observers.remove(o);
+    }
+
+    @Override
+    public void notifyObservers(User user, String message) {
+        for (Observer observer : observers) {
+            observer.update(user, message);
+        }
+    }
+
+    public String placeHold(User user, String itemId) {
+        Optional<LibraryItem> found = itemRepository.findById(itemId);
+        if (!found.isPresent()) {
+            return "Error: Item not found.";
+        }
+        LibraryItem item = found.get();
+        Optional<Loan> loan = loanRepository.findActiveLoanByItem(itemId);
+        if (loan.isPresent() && loan.get().getUser().getId().equals(user.getId())) {
+            return "Error: You already have this item.";
+        }
+        synchronized (this) {
+            ReadyHold ready = readyHolds.get(itemId);
+            if (ready != null && users.get(ready.user).getId().equals(user.getId())) {
+                return "Error: Item is already waiting for you.";
+            }
+            if (ready == null && !item.isBorrowed()) {
+                return "Error: Item is available. Borrow it instead.";
+            }
+            int number = numberOf(user);
+            HoldQueue queue = waitLists.computeIfAbsent(itemId, id -> new HoldQueue());
+            if (queue.indexOf(number) >= 0) {
+                return "Error: You already have a hold on this item.";
+            }
+            queue.add(number);
+            waitingHolds++;
+            holdsPlaced.increment();
+            persist(itemId);
+            return "Success: Hold placed on " + item.getTitle() + ". Position in queue: " + queue.size();
+        }
+    }
+
+    public String cancelHold(User user, String itemId) {
+        List<Notice> notices = new ArrayList<>(1);
+        String result;
+        synchronized (this) {
+            Integer number = userNumbers.get(user.getId());
+            ReadyHold ready = readyHolds.get(itemId);
+            if (number == null) {
+                result = "Error: No hold on this item.";
+            } else if (ready != null && ready.user == number) {
+                readyHolds.remove(itemId);
+                passOn(ready.item, notices);
+                persist(itemId);
+                result = "Success: Hold cancelled.";
+            } else if (removeWaiting(itemId, number)) {
+                persist(itemId);
+                result = "Success: Hold cancelled.";
+            } else {
+                result = "Error: No hold on this item.";
+            }
+        }
+        deliver(notices);
+        return result;
+    }
+
+    /** The user's 1-based place in the item's queue, or 0 if they are not waiting for it. */
+    public synchronized int getPosition(User user, String itemId) {
+        Integer number = userNumbers.get(user.getId());
+        HoldQueue queue = waitLists.get(itemId);
+        return number == null || queue == null ? 0 : queue.indexOf(number) + 1;
+    }
+
+    /** Whether {@code item} has been set aside for someone other than {@code user}. */
+    public synchronized boolean isReservedForOther(User user, LibraryItem item) {
+        ReadyHold ready = readyHolds.get(item.getId());
+        return ready != null && !isHolder(ready, user);
+    }
+
+    /**
+     * Called once {@code user} has won the item's compare-and-set. Returns {@code false} if
+     * the item is set aside for someone else. If it is set aside for {@code user}, expiry
+     * leaves the hold alone until {@link #pickedUp} or {@link #releaseClaim}.
+     */
+    public synchronized boolean claim(User user, LibraryItem item) {
+        ReadyHold ready = readyHolds.get(item.getId());
+        if (ready == null) return true;
+        if (!isHolder(ready, user)) return false;
+        readyHolds.remove(item.getId());
+        claimedHolds.put(item.getId(), ready);
+        return true;
+    }
+
+    /** Sets the item aside again after a claimed pickup failed to save the loan. */
+    public synchronized void releaseClaim(User user, LibraryItem item) {
+        ReadyHold claimed = claimedHolds.get(item.getId());
+        if (claimed != null && isHolder(claimed, user)) {
+            claimedHolds.remove(item.getId());
+            readyHolds.put(item.getId(), claimed);
+            readyOrder.add(claimed);
+        }
+    }
+
+    /** Clears the hold of a user who has just borrowed the item set aside for them. */
+    public synchronized void pickedUp(User user, LibraryItem item) {
+        String itemId = item.getId();
+        ReadyHold claimed = claimedHolds.get(itemId);
+        ReadyHold ready = readyHolds.get(itemId);
+        if (claimed != null && isHolder(claimed, user)) {
+            claimedHolds.remove(itemId);
+        } else if (ready != null && isHolder(ready, user)) {
+            readyHolds.remove(itemId);
+        } else {
+            return;
+        }
+        persist(itemId);
+    }
+
+    /** Sets a returned item aside for the first user waiting for it, if any. */
+    public void itemReturned(LibraryItem item) {
+        List<Notice> notices = new ArrayList<>(1);
+        synchronized (this) {
+            if (!readyHolds.containsKey(item.getId()) && !claimedHolds.containsKey(item.getId())) {
+                passOn(item, notices);
+                persist(item.getId());
+            }
+        }
+        deliver(notices);
+    }
+
+    /**
+     * Ends ready holds whose pickup period is over and passes each item on to the next user
+     * waiting for it. Returns the number of holds that expired.
+     */
+    public int expireHolds() {
+        long today = timeProvider.getEpochDay();
+        List<Notice> notices = new ArrayList<>();
+        int expired = 0;
+        synchronized (this) {
+            while (!readyOrder.isEmpty() && readyOrder.peek().expiresOn < today) {
+                ReadyHold hold = readyOrder.poll();
+                String itemId = hold.item.getId();
+                // Picked up, cancelled, or claimed by the holder, who is picking it up right now.
+                if (readyHolds.get(itemId) != hold) continue;
+                readyHolds.remove(itemId);
+                expired++;
+                notices.add(new Notice(users.get(hold.user), "Your hold on '" + hold.item.getTitle() + "' has expired."));
+                passOn(hold.item, notices);
+                persist(itemId);
+            }
+        }
+        holdsExpired.add(expired);
+        deliver(notices);
+        return expired;
+    }
+
+    public synchronized long getWaitingHoldCount() {
+        return waitingHolds;
+    }
+
+    public synchronized long getReadyHoldCount() {
+        return readyHolds.size() + claimedHolds.size();
+    }
+
+    private boolean isHolder(ReadyHold hold, User user) {
+        return users.get(hold.user).getId().equals(user.getId());
+    }
+
+    /** Stores the current holds on {@code itemId}, if holds are persisted. */
+    private void persist(String itemId) {
+        if (holdRepository == null) return;
+        List<String> waiting = new ArrayList<>();
+        HoldQueue queue = waitLists.get(itemId);
+        for (int i = 0; queue != null && i < queue.size(); i++) {
+            waiting.add(users.get(queue.get(i)).getId());
+        }
+        ReadyHold ready = readyHolds.containsKey(itemId) ? readyHolds.get(itemId) : claimedHolds.get(itemId);
+        holdRepository.save(new ItemHolds(itemId, waiting, ready == null ? null : users.get(ready.user).getId(),
+            ready == null ? 0 : ready.expiresOn));
+    }
+
+    /** Loads the stored holds. Holds on items or of users that no longer exist are skipped. */
+    private void load(UserRepository userRepository) {
+        List<ReadyHold> ready = new ArrayList<>();
+        for (ItemHolds stored : holdRepository.findAll()) {
+            Optional<LibraryItem> item = itemRepository.findById(stored.getItemId());
+            if (!item.isPresent()) continue;
+            for (String userId : stored.getWaitingUserIds()) {
+                Optional<User> user = userRepository.findById(userId);
+                if (!user.isPresent()) continue;
+                waitLists.computeIfAbsent(stored.getItemId(), id -> new HoldQueue()).add(numberOf(user.get()));
+                waitingHolds++;
+            }
+            Optional<User> holder = stored.getReadyUserId() == null
+                ? Optional.empty() : userRepository.findById(stored.getReadyUserId());
+            if (holder.isPresent()) {
+                ReadyHold hold = new ReadyHold(item.get(), numberOf(holder.get()), stored.getPickupByEpochDay());
+                readyHolds.put(stored.getItemId(), hold);
+                ready.add(hold);
+            }
+        }
+        ready.sort(Comparator.comparingLong(hold -> hold.expiresOn));
+        readyOrder.addAll(ready);
+    }
+
+    private void passOn(LibraryItem item, List<Notice> notices) {
+        HoldQueue queue = waitLists.get(item.getId());
+        if (queue == null) return;
+        int next = queue.poll();
+        waitingHolds--;
+        if (queue.isEmpty()) {
+            waitLists.remove(item.getId());
+        }
+        long expiresOn = timeProvider.getEpochDay() + pickupDays;
+        ReadyHold hold = new ReadyHold(item, next, expiresOn);
+        readyHolds.put(item.getId(), hold);
+        readyOrder.add(hold);
+        notices.add(new Notice(users.get(next), "'" + item.getTitle() + "' is ready for pickup until "
+            + LocalDate.ofEpochDay(expiresOn) + "."));
+    }
+
+    private boolean removeWaiting(String itemId, int number) {
+        HoldQueue queue = waitLists.get(itemId);
+        if (queue == null || !queue.remove(number)) return false;
+        waitingHolds--;
+        if (queue.isEmpty()) {
+            waitLists.remove(itemId);
+        }
+        return true;
+    }
+
+    /** Numbers each user once, keeping the most recent instance for notifications. */
+    private int numberOf(User user) {
+        Integer number = userNumbers.get(user.getId());
+        if (number != null) {
+            users.set(number, user);
+            return number;
+        }
+        number = users.size();
+        users.add(user);
+        userNumbers.put(user.getId(), number);
+        return number;
+    }
+
+    private void deliver(List<Notice> notices) {
+        for (Notice notice : notices) {
+            notifyObservers(notice.user, notice.message);
+        }
+    }
+
+    private static final class ReadyHold {
+        final LibraryItem item;
+        final int user;
+        final long expiresOn;
+
+        ReadyHold(LibraryItem item, int user, long expiresOn) {
+            this.item = item;
+            this.user = user;
+            this.expiresOn = expiresOn;
+        }
+    }
+
+    private static final class Notice {
+        final User user;
+        final String message;
+
+        Notice(User user, String message) {
+            this.user = user;
+            this.message = message;
+        }
+    }
+}
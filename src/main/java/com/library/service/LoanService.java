@@ -1,60 +1,388 @@
 package com.library.service;
 
-import java.time.temporal.ChronoUnit;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import com.library.domain.LibraryItem;
 import com.library.domain.Loan;
+import com.library.domain.Money;
 import com.library.domain.User;
+import com.library.metrics.Counter;
+import com.library.metrics.LatencyHistogram;
+import com.library.metrics.MetricsRegistry;
 import com.library.repository.LoanRepository;
 
 
 public class LoanService {
+    private static final int RETURN_LOCK_STRIPES = 64;
 
     private final LoanRepository loanRepository;
     private final TimeProvider timeProvider;
+    private final FineLedger fineLedger;
+    private final LatencyHistogram borrowLatency;
+    private final LatencyHistogram borrowBatchLatency;
+    private final Counter borrowsGranted;
+    private final Counter borrowsRefused;
+    private final LatencyHistogram overdueCheckLatency;
+    private final LatencyHistogram returnLatency;
+    // Returns of the same item are serialised; returns of different items rarely share a stripe.
+    private final ReentrantLock[] returnLocks = newLocks(RETURN_LOCK_STRIPES);
+    private volatile ParallelOverdueScan parallelScan;
+    private volatile HoldService holdService;
 
     public LoanService(LoanRepository loanRepository, TimeProvider timeProvider) {
+        this(loanRepository, timeProvider, MetricsRegistry.getDefault());
+    }
+
+    public LoanService(LoanRepository loanRepository, TimeProvider timeProvider, MetricsRegistry metrics) {
+        this(loanRepository, timeProvider, null, metrics);
+    }
+
+    /** Returns settle the loan's fine on {@code fineLedger}. */
+    public LoanService(LoanRepository loanRepository, TimeProvider timeProvider, FineLedger fineLedger) {
+        this(loanRepository, timeProvider, fineLedger, MetricsRegistry.getDefault());
+    }
+
+    public LoanService(LoanRepository loanRepository, TimeProvider timeProvider, FineLedger fineLedger,
+            MetricsRegistry metrics) {
         this.loanRepository = loanRepository;
         this.timeProvider = timeProvider;
+        this.fineLedger = fineLedger;
+        this.borrowLatency = metrics.histogram("loan.borrow");
+        this.borrowBatchLatency = metrics.histogram("loan.borrow.batch");
+        this.borrowsGranted = metrics.counter("loan.borrow.granted");
+        this.borrowsRefused = metrics.counter("loan.borrow.refused");
+        this.overdueCheckLatency = metrics.histogram("loan.checkOverdue");
+        this.returnLatency = metrics.histogram("loan.return");
+    }
+
+    /**
+     * Builds overdue report lines on a fork-join pool of {@code parallelism} threads. With
+     * {@code ordered} false, lines come out in whatever order the partitions finish.
+     */
+    public void enableParallelScan(int parallelism, boolean ordered) {
+        parallelScan = new ParallelOverdueScan(parallelism, ordered);
+    }
+
+    /**
+     * Makes borrowing respect the holds in {@code holds}: an item set aside for one user
+     * cannot be borrowed by anyone else, and a returned item goes to the first user waiting.
+     */
+    public void enableHolds(HoldService holds) {
+        holdService = holds;
     }
 
     public String borrowItem(User user, LibraryItem item) {
+        long start = System.nanoTime();
+        try {
+            String result = attemptBorrow(user, item);
+            (result.startsWith("Success") ? borrowsGranted : borrowsRefused).increment();
+            return result;
+        } finally {
+            borrowLatency.recordSince(start);
+        }
+    }
+
+    /** Borrows a stack of items, lending each one that is available. */
+    public List<String> borrowItems(User user, List<LibraryItem> items) {
+        return borrowItems(user, items, false);
+    }
+
+    /**
+     * Borrows a stack of items, e.g. one scanned at a kiosk, with one eligibility check for
+     * the user and one repository write for all the new loans. With {@code allOrNothing},
+     * nothing is lent unless every item is available. Returns one result per item, in order.
+     */
+    public List<String> borrowItems(User user, List<LibraryItem> items, boolean allOrNothing) {
+        long start = System.nanoTime();
+        try {
+            List<String> results = attemptBorrowAll(user, items, allOrNothing);
+            for (String result : results) {
+                (result.startsWith("Success") ? borrowsGranted : borrowsRefused).increment();
+            }
+            return results;
+        } finally {
+            borrowBatchLatency.recordSince(start);
+        }
+    }
+
+    private String attemptBorrow(User user, LibraryItem item) {
         if (item.isBorrowed()) {
             return "Error: Item is already borrowed.";
         }
-        
-        if (user.getFinesOwed() > 0) {
-            return "Error: Cannot borrow. You have unpaid fines.";
-        }
 
-        boolean hasOverdue = loanRepository.findActiveLoansByUser(user).stream()
-                .anyMatch(loan -> loan.isOverdue(timeProvider.getDate()));
+        String refusal = checkEligibility(user);
+        if (refusal != null) {
+            return refusal;
+        }
 
-        if (hasOverdue) {
-            return "Error: Cannot borrow. You have overdue items.";
+        // The isBorrowed check at the top is only a fast path; two borrowers can both get
+        // this far. Exactly one of them wins the compare-and-set on the item.
+        String refused = reserve(user, item);
+        if (refused != null) {
+            return refused;
         }
 
         Loan loan = new Loan(item, user, timeProvider.getDate());
-        item.setBorrowed(true);
-        loanRepository.save(loan);
+        try {
+            loanRepository.save(loan);
+        } catch (RuntimeException e) {
+            unreserve(user, item);
+            throw e;
+        }
+        pickedUp(user, item);
         
         return "Success: Borrowed " + item.getTitle() + ". Due: " + loan.getDueDate();
     }
 
+    private List<String> attemptBorrowAll(User user, List<LibraryItem> items, boolean allOrNothing) {
+        String refusal = checkEligibility(user);
+        if (refusal != null) {
+            return Collections.nCopies(items.size(), refusal);
+        }
+
+        // Reserve every item first; a duplicate in the stack simply loses its own race.
+        String[] refused = new String[items.size()];
+        boolean allReserved = true;
+        for (int i = 0; i < items.size(); i++) {
+            refused[i] = reserve(user, items.get(i));
+            allReserved &= refused[i] == null;
+        }
+        if (allOrNothing && !allReserved) {
+            List<String> results = new ArrayList<>(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                if (refused[i] == null) {
+                    unreserve(user, items.get(i));
+                }
+                results.add(refused[i] != null ? refused[i] : "Error: Not borrowed, another item is unavailable.");
+            }
+            return results;
+        }
+
+        LocalDate today = timeProvider.getDate();
+        List<Loan> loans = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            if (refused[i] == null) {
+                loans.add(new Loan(items.get(i), user, today));
+            }
+        }
+        try {
+            loanRepository.saveAll(loans);
+        } catch (RuntimeException e) {
+            for (Loan loan : loans) {
+                unreserve(user, loan.getItem());
+            }
+            throw e;
+        }
+
+        List<String> results = new ArrayList<>(items.size());
+        Iterator<Loan> lent = loans.iterator();
+        for (int i = 0; i < items.size(); i++) {
+            if (refused[i] == null) {
+                Loan loan = lent.next();
+                pickedUp(user, loan.getItem());
+                results.add("Success: Borrowed " + loan.getItem().getTitle() + ". Due: " + loan.getDueDate());
+            } else {
+                results.add(refused[i]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Wins the item's compare-and-set for {@code user}, or returns why not. An item set
+     * aside for another user's hold is released again straight away.
+     */
+    private String reserve(User user, LibraryItem item) {
+        if (!item.tryBorrow()) {
+            return "Error: Item is already borrowed.";
+        }
+        HoldService holds = holdService;
+        if (holds != null && !holds.claim(user, item)) {
+            item.tryReturn();
+            return "Error: Item is on hold for another patron.";
+        }
+        return null;
+    }
+
+    /** Undoes {@link #reserve}. The hold is set aside again before the item is released. */
+    private void unreserve(User user, LibraryItem item) {
+        HoldService holds = holdService;
+        if (holds != null) {
+            holds.releaseClaim(user, item);
+        }
+        item.tryReturn();
+    }
+
+    private void pickedUp(User user, LibraryItem item) {
+        HoldService holds = holdService;
+        if (holds != null) {
+            holds.pickedUp(user, item);
+        }
+    }
+
+    /**
+     * Why {@code user} may not borrow right now, or null if they may. Both the fine balance
+     * and the repository's loan summary are kept up to date as they change, so neither check
+     * reads the user's loans.
+     */
+    private String checkEligibility(User user) {
+        if (user.getFineBalance().isPositive()) {
+            return "Error: Cannot borrow. You have unpaid fines.";
+        }
+
+        if (loanRepository.getLoanSummary(user).hasOverdue(timeProvider.getEpochDay())) {
+            return "Error: Cannot borrow. You have overdue items.";
+        }
+        return null;
+    }
+
+    /**
+     * Ends the active loan of an item, found through the repository's index by item, and
+     * makes the item available again. With a fine ledger, the days the loan was overdue since
+     * the last accrual run are charged before it leaves the overdue scan.
+     */
+    public String returnItem(String itemId) {
+        return returnItems(Collections.singletonList(itemId)).get(0);
+    }
+
+    /**
+     * Returns a stack of scanned items, e.g. the contents of a drop box, with one repository
+     * write for the loans and one ledger write for their fines. Returns one result per item.
+     */
+    public List<String> returnItems(List<String> itemIds) {
+        long start = System.nanoTime();
+        try {
+            return attemptReturnAll(itemIds);
+        } finally {
+            returnLatency.recordSince(start);
+        }
+    }
+
+    private List<String> attemptReturnAll(List<String> itemIds) {
+        String[] results = new String[itemIds.size()];
+        List<Loan> loans = new ArrayList<>(itemIds.size());
+        List<Integer> positions = new ArrayList<>(itemIds.size());
+        Set<String> returning = new HashSet<>();
+        List<Money> fines;
+        // Two desks scanning the same item both find the loan; only the first may record the
+        // return, or the second save would store the returned loan a second time.
+        List<ReentrantLock> locks = lockItems(itemIds);
+        try {
+            for (int i = 0; i < itemIds.size(); i++) {
+                Optional<Loan> found = loanRepository.findActiveLoanByItem(itemIds.get(i));
+                if (!found.isPresent() || !returning.add(itemIds.get(i))) {
+                    results[i] = "Error: Item is not on loan.";
+                    continue;
+                }
+                loans.add(found.get());
+                positions.add(i);
+            }
+            if (fineLedger != null) {
+                fines = fineLedger.settle(loans, () -> endLoans(loans));
+            } else {
+                endLoans(loans);
+                fines = Collections.nCopies(loans.size(), Money.ZERO);
+            }
+        } finally {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+        }
+        HoldService holds = holdService;
+        for (int j = 0; j < loans.size(); j++) {
+            LibraryItem item = loans.get(j).getItem();
+            // The hold is set before the item is released, so a borrower who sees the item
+            // available also sees the hold.
+            if (holds != null) {
+                holds.itemReturned(item);
+            }
+            // Released last, so a new loan of the item is never saved while this one is active.
+            item.setBorrowed(false);
+            Money fine = fines.get(j);
+            results[positions.get(j)] = "Success: Returned " + item.getTitle() + "."
+                + (fine.isPositive() ? " Fine charged: " + fine : "");
+        }
+        return Arrays.asList(results);
+    }
+
+    private void endLoans(List<Loan> loans) {
+        for (Loan loan : loans) {
+            loan.returnItem();
+        }
+        loanRepository.saveAll(loans);
+    }
+
+    /** Locks the stripes of {@code itemIds} in ascending order, so two batches never deadlock. */
+    private List<ReentrantLock> lockItems(List<String> itemIds) {
+        Set<Integer> stripes = new TreeSet<>();
+        for (String itemId : itemIds) {
+            stripes.add(Math.floorMod(itemId.hashCode(), RETURN_LOCK_STRIPES));
+        }
+        List<ReentrantLock> locks = new ArrayList<>(stripes.size());
+        for (int stripe : stripes) {
+            returnLocks[stripe].lock();
+            locks.add(returnLocks[stripe]);
+        }
+        return locks;
+    }
+
+    private static ReentrantLock[] newLocks(int count) {
+        ReentrantLock[] locks = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
     public List<String> checkOverdueItems() {
-        return loanRepository.findAllActiveLoans().stream()
-            .filter(loan -> loan.isOverdue(timeProvider.getDate()))
-            .map(loan -> {
-                long daysOverdue = ChronoUnit.DAYS.between(loan.getDueDate(), timeProvider.getDate());
-                double fine = loan.getItem().calculateFine(daysOverdue);
-                return String.format("Overdue: %s (%s) - Days late: %d - Est. Fine: %.2f", 
-                    loan.getItem().getTitle(), 
-                    loan.getItem().getClass().getSimpleName(),
-                    daysOverdue,
-                    fine);
-            })
-            .collect(Collectors.toList());
+        List<String> report = new ArrayList<>();
+        reportOverdueItems(report::add);
+        return report;
+    }
+
+    /**
+     * Passes one report line per overdue loan to {@code out}, earliest due date first, as the
+     * loans are read from the repository. Returns the number of lines. A parallel scan reads
+     * the overdue loans as one list first, so it can split them into partitions.
+     */
+    public int reportOverdueItems(Consumer<String> out) {
+        long start = System.nanoTime();
+        LocalDate today = timeProvider.getDate();
+        long todayEpochDay = today.toEpochDay();
+        ParallelOverdueScan parallel = parallelScan;
+        if (parallel != null) {
+            List<Loan> overdue = loanRepository.findLoansDueBefore(today);
+            try {
+                parallel.forEach(overdue, loan -> OverdueMessages.reportLine(loan, loan.daysOverdue(todayEpochDay)),
+                    (loan, line) -> out.accept(line));
+            } finally {
+                overdueCheckLatency.recordSince(start);
+            }
+            return overdue.size();
+        }
+        int count = 0;
+        try (Stream<Loan> overdue = loanRepository.streamLoansDueBefore(today)) {
+            Iterator<Loan> loans = overdue.iterator();
+            while (loans.hasNext()) {
+                Loan loan = loans.next();
+                out.accept(OverdueMessages.reportLine(loan, loan.daysOverdue(todayEpochDay)));
+                count++;
+            }
+        } finally {
+            overdueCheckLatency.recordSince(start);
+        }
+        return count;
     }
 }
\ No newline at end of file
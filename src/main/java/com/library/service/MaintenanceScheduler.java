@@ -0,0 +1,132 @@
+package com.library.service;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.library.metrics.Counter;
+import com.library.metrics.MetricsRegistry;
+import com.library.repository.JobStateRepository;
+
+/**
+ * Runs daily jobs such as reminders, fine accrual and hold expiry on a background thread.
+ * <p>
+ * The thread wakes up every tick and runs each job that is due: one that has not run today
+ * and whose time of day has passed, or one that missed an earlier day, e.g. because the
+ * system was down. A job runs at most once per day however many days it missed. It is
+ * handed the day of its previous run, so it can cover everything since then in one pass,
+ * and the day it ran is saved only once it has completed; a job that fails is tried again
+ * on the next tick.
+ */
+public class MaintenanceScheduler {
+    private static final Logger LOGGER = Logger.getLogger(MaintenanceScheduler.class.getName());
+
+    /** A daily job. {@code lastRunEpochDay} is the day it last completed, or {@link JobStateRepository#NEVER_RUN}. */
+    @FunctionalInterface
+    public interface Job {
+        void run(long lastRunEpochDay);
+    }
+
+    private final Clock clock;
+    private final JobStateRepository jobState;
+    private final MetricsRegistry metrics;
+    private final Counter failures;
+    private final Map<String, ScheduledJob> jobs = new LinkedHashMap<>();
+    private ScheduledExecutorService executor;
+
+    /** Reads the date and time of day from {@code clock}, which must be a real clock, not just a date. */
+    public MaintenanceScheduler(Clock clock, JobStateRepository jobState) {
+        this(clock, jobState, MetricsRegistry.getDefault());
+    }
+
+    public MaintenanceScheduler(Clock clock, JobStateRepository jobState, MetricsRegistry metrics) {
+        this.clock = clock;
+        this.jobState = jobState;
+        this.metrics = metrics;
+        this.failures = metrics.counter("scheduler.failures");
+    }
+
+    /** Runs {@code job} once a day from {@code runAt} on. */
+    public synchronized void schedule(String name, LocalTime runAt, Job job) {
+        jobs.put(name, new ScheduledJob(name, runAt, job));
+    }
+
+    /**
+     * Checks the jobs every {@code tickPeriod}, starting one tick from now, on a daemon
+     * thread; so a run after downtime happens shortly after startup, off the caller's thread.
+     */
+    public synchronized void start(long tickPeriod, TimeUnit unit) {
+        if (executor != null) {
+            throw new IllegalStateException("Scheduler already started");
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "maintenance-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::runDueJobs, tickPeriod, tickPeriod, unit);
+    }
+
+    /** Stops the ticks and waits for a running job to finish. */
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = executor;
+            executor = null;
+        }
+        if (running != null) {
+            running.shutdown();
+            running.awaitTermination(timeout, unit);
+        }
+    }
+
+    /** Runs every job that is due now and returns how many completed. */
+    public synchronized int runDueJobs() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        long today = now.toLocalDate().toEpochDay();
+        int completed = 0;
+        for (ScheduledJob job : jobs.values()) {
+            long lastRun = jobState.getLastRun(job.name);
+            boolean missedEarlierDay = lastRun != JobStateRepository.NEVER_RUN && lastRun < today - 1;
+            boolean due = lastRun < today && (missedEarlierDay || !now.toLocalTime().isBefore(job.runAt));
+            if (due && run(job, lastRun)) {
+                jobState.setLastRun(job.name, today);
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    private boolean run(ScheduledJob job, long lastRun) {
+        long start = System.nanoTime();
+        try {
+            job.job.run(lastRun);
+            return true;
+        } catch (RuntimeException e) {
+            failures.increment();
+            LOGGER.log(Level.SEVERE, "Scheduled job " + job.name + " failed", e);
+            return false;
+        } finally {
+            metrics.histogram("scheduler." + job.name).recordSince(start);
+        }
+    }
+
+    private static final class ScheduledJob {
+        final String name;
+        final LocalTime runAt;
+        final Job job;
+
+        ScheduledJob(String name, LocalTime runAt, Job job) {
+            this.name = name;
+            this.runAt = runAt;
+            this.job = job;
+        }
+    }
+}
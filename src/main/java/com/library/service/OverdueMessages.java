@@ -0,0 +1,68 @@
+package com.library.service;
+
+import java.util.List;
+
+import com.library.domain.LibraryItem;
+import com.library.domain.Loan;
+
+/**
+ * Text of the overdue report and reminders. Built with a {@link StringBuilder} instead of
+ * {@link String#format}, which parses its pattern and boxes its arguments on every call;
+ * amounts are still rounded half-up to two decimals.
+ */
+final class OverdueMessages {
+
+    private OverdueMessages() {
+    }
+
+    static String reportLine(Loan loan, long daysLate) {
+        LibraryItem item = loan.getItem();
+        StringBuilder line = new StringBuilder(96)
+            .append("Overdue: ").append(item.getTitle())
+            .append(" (").append(item.getClass().getSimpleName())
+            .append(") - Days late: ").append(daysLate)
+            .append(" - Est. Fine: ");
+        return appendAmount(line, item.calculateFine(daysLate)).toString();
+    }
+
+    static String reminder(Loan loan, long daysLate) {
+        return new StringBuilder(80)
+            .append("Item '").append(loan.getItem().getTitle())
+            .append("' is overdue by ").append(daysLate)
+            .append(" days. Please return it.")
+            .toString();
+    }
+
+    static String digest(List<Loan> loans, long today) {
+        StringBuilder lines = new StringBuilder(64 * loans.size());
+        double totalFine = 0;
+        for (Loan loan : loans) {
+            long daysLate = loan.daysOverdue(today);
+            double fine = loan.getItem().calculateFine(daysLate);
+            totalFine += fine;
+            lines.append(System.lineSeparator())
+                .append(" - '").append(loan.getItem().getTitle())
+                .append("' overdue by ").append(daysLate)
+                .append(" days (est. fine ");
+            appendAmount(lines, fine).append(')');
+        }
+        StringBuilder message = new StringBuilder(lines.length() + 80)
+            .append("You have ").append(loans.size())
+            .append(" overdue item(s), est. total fine ");
+        return appendAmount(message, totalFine).append(". Please return them:").append(lines).toString();
+    }
+
+    /** Appends {@code amount} with exactly two decimals, like {@code %.2f}. */
+    static StringBuilder appendAmount(StringBuilder out, double amount) {
+        long cents = Math.round(Math.abs(amount) * 100);
+        if (amount < 0 && cents != 0) {
+            out.append('-');
+        }
+        out.append(cents / 100).append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) {
+            out.append('0');
+        }
+        return out.append(fraction);
+    }
+}
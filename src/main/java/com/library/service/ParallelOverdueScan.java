@@ -0,0 +1,106 @@
+package com.library.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import com.library.domain.Loan;
+
+/**
+ * Turns a list of overdue loans into report lines or messages on a fork-join pool.
+ * <p>
+ * The list is split in halves down to partitions of at least {@link #MIN_PARTITION} loans,
+ * which is cheap for the {@code ArrayList}s the repositories return. Each partition writes
+ * its results into its own slice of one shared array. In ordered mode the caller then hands
+ * the results to the sink in loan order, exactly as a sequential scan would. In unordered
+ * mode each partition hands over its slice as soon as it is done, so results arrive in
+ * partition completion order. Either way the sink is never called concurrently.
+ * <p>
+ * Pools are shared by every scan with the same parallelism, so enabling parallel scans
+ * again never leaves an old pool's threads behind.
+ */
+final class ParallelOverdueScan {
+    static final int MIN_PARTITION = 1024;
+
+    private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    private final ForkJoinPool pool;
+    private final boolean ordered;
+    private final Object sinkLock = new Object();
+
+    ParallelOverdueScan(int parallelism, boolean ordered) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.pool = POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+        this.ordered = ordered;
+    }
+
+    <R> void forEach(List<Loan> loans, Function<Loan, R> mapper, BiConsumer<Loan, R> sink) {
+        int partition = Math.max(MIN_PARTITION, loans.size() / (pool.getParallelism() * 4));
+        if (loans.size() <= partition) {
+            for (Loan loan : loans) {
+                sink.accept(loan, mapper.apply(loan));
+            }
+            return;
+        }
+        Object[] results = new Object[loans.size()];
+        pool.invoke(new Partition<>(loans, mapper, ordered ? null : sink, results, 0, loans.size(), partition));
+        if (ordered) {
+            for (int i = 0; i < results.length; i++) {
+                sink.accept(loans.get(i), cast(results[i]));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> R cast(Object result) {
+        return (R) result;
+    }
+
+    @SuppressWarnings("serial") // never serialized
+    private final class Partition<R> extends RecursiveAction {
+        private final List<Loan> loans;
+        private final Function<Loan, R> mapper;
+        private final BiConsumer<Loan, R> sink;
+        private final Object[] results;
+        private final int from;
+        private final int to;
+        private final int partition;
+
+        Partition(List<Loan> loans, Function<Loan, R> mapper, BiConsumer<Loan, R> sink, Object[] results,
+                int from, int to, int partition) {
+            this.loans = loans;
+            this.mapper = mapper;
+            this.sink = sink;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.partition = partition;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > partition) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Partition<>(loans, mapper, sink, results, from, middle, partition),
+                    new Partition<>(loans, mapper, sink, results, middle, to, partition));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                results[i] = mapper.apply(loans.get(i));
+            }
+            if (sink != null) {
+                synchronized (sinkLock) {
+                    for (int i = from; i < to; i++) {
+                        sink.accept(loans.get(i), cast(results[i]));
+                    }
+                }
+            }
+        }
+    }
+}
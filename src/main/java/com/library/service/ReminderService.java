@@ -1,26 +1,47 @@
 package com.library.service;
 
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.library.domain.Loan;
 import com.library.domain.User;
+import com.library.metrics.Counter;
+import com.library.metrics.LatencyHistogram;
+import com.library.metrics.MetricsRegistry;
 import com.library.observer.Observer;
 import com.library.observer.Subject;
+import com.library.repository.JobStateRepository;
 import com.library.repository.LoanRepository;
 
 
 public class ReminderService implements Subject {
+    private static final Logger LOGGER = Logger.getLogger(ReminderService.class.getName());
+
     private final LoanRepository loanRepository;
     private final TimeProvider timeProvider;
     private final List<Observer> observers;
+    private volatile AsyncNotificationDispatcher dispatcher;
+    private volatile ParallelOverdueScan parallelScan;
+    private final LatencyHistogram runLatency;
+    private final Counter notificationsSent;
 
     public ReminderService(LoanRepository loanRepository, TimeProvider timeProvider) {
+        this(loanRepository, timeProvider, MetricsRegistry.getDefault());
+    }
+
+    public ReminderService(LoanRepository loanRepository, TimeProvider timeProvider, MetricsRegistry metrics) {
         this.loanRepository = loanRepository;
         this.timeProvider = timeProvider;
-        this.observers = new ArrayList<>();
+        this.observers = new CopyOnWriteArrayList<>();
+        this.runLatency = metrics.histogram("reminder.run");
+        this.notificationsSent = metrics.counter("reminder.notifications");
     }
 
     @Override
@@ -35,22 +56,141 @@ public class ReminderService implements Subject {
 
     @Override
     public void notifyObservers(User user, String message) {
+        notificationsSent.increment();
+        AsyncNotificationDispatcher async = dispatcher;
+        if (async != null) {
+            async.submit(user, message);
+        } else {
+            deliver(user, message);
+        }
+    }
+
+    /**
+     * Hands notifications to a pool of {@code workers} threads instead of calling observers
+     * inline, so a reminder run is no longer as slow as the sum of all sends. Call
+     * {@link #shutdown} before enabling it again.
+     */
+    public synchronized void enableAsyncDispatch(int workers, int queueCapacity, int batchSize) {
+        if (dispatcher != null) {
+            throw new IllegalStateException("Asynchronous dispatch is already enabled");
+        }
+        dispatcher = new AsyncNotificationDispatcher(this::deliver, workers, queueCapacity, batchSize);
+    }
+
+    /**
+     * Builds reminder messages on a fork-join pool of {@code parallelism} threads. With
+     * {@code ordered} false, each partition notifies observers from its worker thread as
+     * soon as it is done, one partition at a time.
+     */
+    public void enableParallelScan(int parallelism, boolean ordered) {
+        parallelScan = new ParallelOverdueScan(parallelism, ordered);
+    }
+
+    /** Waits for queued notifications to be delivered. Returns immediately in synchronous mode. */
+    public boolean awaitDelivery(long timeout, TimeUnit unit) throws InterruptedException {
+        AsyncNotificationDispatcher async = dispatcher;
+        return async == null || async.flush(timeout, unit);
+    }
+
+    /** Delivers anything still queued and returns to synchronous dispatch. */
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        AsyncNotificationDispatcher async;
+        synchronized (this) {
+            async = dispatcher;
+            dispatcher = null;
+        }
+        if (async != null) {
+            async.close(timeout, unit);
+        }
+    }
+
+    /**
+     * Passes the message to every observer. A failing observer is logged and skipped, so one
+     * bad recipient neither fails a scheduled run, which would send everyone's reminders
+     * again on the next one, nor keeps the message from the other observers.
+     */
+    private void deliver(User user, String message) {
         for (Observer observer : observers) {
-            observer.update(user, message);
+            try {
+                observer.update(user, message);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Notification to " + user.getId() + " failed", e);
+            }
         }
     }
 
     public void sendOverdueReminders() {
+        long start = System.nanoTime();
         LocalDate today = timeProvider.getDate();
-        List<Loan> activeLoans = loanRepository.findAllActiveLoans();
-
-        for (Loan loan : activeLoans) {
-            if (loan.isOverdue(today)) {
-                long daysLate = ChronoUnit.DAYS.between(loan.getDueDate(), today);
-                String message = String.format("Item '%s' is overdue by %d days. Please return it.", 
-                    loan.getItem().getTitle(), daysLate);
-                notifyObservers(loan.getUser(), message);
+        remind(loanRepository.findLoansDueBefore(today), today.toEpochDay());
+        runLatency.recordSince(start);
+    }
+
+    /**
+     * Reminds only the loans that became overdue after {@code lastRunEpochDay}, the day of
+     * the previous run, so consecutive runs never remind the same loan twice and a run after
+     * days without one covers all of them. Returns the number of reminders.
+     */
+    public int sendNewlyOverdueReminders(long lastRunEpochDay) {
+        long start = System.nanoTime();
+        LocalDate today = timeProvider.getDate();
+        List<Loan> newlyOverdue = findNewlyOverdue(lastRunEpochDay, today);
+        remind(newlyOverdue, today.toEpochDay());
+        runLatency.recordSince(start);
+        return newlyOverdue.size();
+    }
+
+    /**
+     * Like {@link #sendNewlyOverdueReminders}, but with one digest per user listing that
+     * user's newly overdue items. Returns the number of digests.
+     */
+    public int sendNewlyOverdueDigests(long lastRunEpochDay) {
+        long start = System.nanoTime();
+        LocalDate today = timeProvider.getDate();
+        int sent = sendDigests(findNewlyOverdue(lastRunEpochDay, today), today.toEpochDay());
+        runLatency.recordSince(start);
+        return sent;
+    }
+
+    private List<Loan> findNewlyOverdue(long lastRunEpochDay, LocalDate today) {
+        // A loan is overdue on day d once its due day is before d.
+        return lastRunEpochDay == JobStateRepository.NEVER_RUN
+            ? loanRepository.findLoansDueBefore(today)
+            : loanRepository.findLoansDueBetween(LocalDate.ofEpochDay(lastRunEpochDay), today);
+    }
+
+    private void remind(List<Loan> overdueLoans, long todayEpochDay) {
+        ParallelOverdueScan parallel = parallelScan;
+        if (parallel != null) {
+            parallel.forEach(overdueLoans, loan -> OverdueMessages.reminder(loan, loan.daysOverdue(todayEpochDay)),
+                (loan, message) -> notifyObservers(loan.getUser(), message));
+        } else {
+            for (Loan loan : overdueLoans) {
+                notifyObservers(loan.getUser(), OverdueMessages.reminder(loan, loan.daysOverdue(todayEpochDay)));
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Sends one message per user listing all of that user's overdue items, instead of one
+     * message per overdue loan.
+     */
+    public void sendOverdueDigests() {
+        long start = System.nanoTime();
+        LocalDate today = timeProvider.getDate();
+        sendDigests(loanRepository.findLoansDueBefore(today), today.toEpochDay());
+        runLatency.recordSince(start);
+    }
+
+    private int sendDigests(List<Loan> overdueLoans, long todayEpochDay) {
+        Map<User, List<Loan>> overdueByUser = new LinkedHashMap<>();
+        for (Loan loan : overdueLoans) {
+            overdueByUser.computeIfAbsent(loan.getUser(), u -> new ArrayList<>()).add(loan);
+        }
+
+        for (Map.Entry<User, List<Loan>> entry : overdueByUser.entrySet()) {
+            notifyObservers(entry.getKey(), OverdueMessages.digest(entry.getValue(), todayEpochDay));
+        }
+        return overdueByUser.size();
+    }
+}
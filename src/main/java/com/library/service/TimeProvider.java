@@ -5,4 +5,9 @@ import java.time.LocalDate;
 
 public interface TimeProvider {
     LocalDate getDate();
-}
\ No newline at end of file
+
+    /** Today as days since 1970-01-01, for comparing against {@link com.library.domain.Loan#getDueEpochDay()}. */
+    default long getEpochDay() {
+        return getDate().toEpochDay();
+    }
+}
@@ -1,7 +1,5 @@
 package com.library.service;
 
-import java.util.List;
-import com.library.domain.Loan;
 import com.library.repository.LoanRepository;
 import com.library.repository.UserRepository;
 
@@ -17,11 +15,10 @@ public class UserService {
 
     public String unregisterUser(String userId) {
         return userRepository.findById(userId).map(user -> {
-            if (user.getFinesOwed() > 0) {
+            if (user.getFineBalance().isPositive()) {
                 return "Error: Cannot unregister. User has unpaid fines.";
             }
-            List<Loan> activeLoans = loanRepository.findActiveLoansByUser(user);
-            if (!activeLoans.isEmpty()) {
+            if (loanRepository.getLoanSummary(user).hasActiveLoans()) {
                 return "Error: Cannot unregister. User has active loans.";
             }
             userRepository.delete(user);
@@ -0,0 +1,133 @@
+package com.library.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.library.domain.*;
+import com.library.repository.LoanRepository;
+
+class AsyncNotificationDispatcherTest {
+
+    @Test
+    void testSlowObserversDoNotBlockTheReminderRun() throws Exception {
+        LocalDate today = LocalDate.of(2024, 3, 1);
+        List<Loan> overdue = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            overdue.add(new Loan(new Book("b" + i, "Book " + i, "A"), new User("u" + i, "U", "p"), today.minusDays(40)));
+        }
+        LoanRepository loanRepo = mock(LoanRepository.class);
+        when(loanRepo.findLoansDueBefore(today)).thenReturn(overdue);
+
+        Set<String> notified = ConcurrentHashMap.newKeySet();
+        ReminderService reminderService = new ReminderService(loanRepo, () -> today);
+        reminderService.registerObserver((user, message) -> {
+            sleep(50);
+            notified.add(user.getId());
+        });
+        reminderService.enableAsyncDispatch(10, 64, 4);
+
+        long start = System.nanoTime();
+        reminderService.sendOverdueReminders();
+        long scanMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(scanMillis < 20 * 50, "Scan waited for deliveries: " + scanMillis + "ms");
+        assertTrue(reminderService.awaitDelivery(10, TimeUnit.SECONDS));
+        assertEquals(20, notified.size());
+        reminderService.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testFullQueueAppliesBackpressureWithoutLosingNotifications() throws Exception {
+        AtomicInteger delivered = new AtomicInteger();
+        AsyncNotificationDispatcher dispatcher = new AsyncNotificationDispatcher(
+            (user, message) -> {
+                sleep(1);
+                delivered.incrementAndGet();
+            }, 1, 2, 8);
+
+        User user = new User("u1", "Name", "pass");
+        for (int i = 0; i < 100; i++) {
+            dispatcher.submit(user, "message " + i);
+            assertTrue(dispatcher.getPendingCount() <= 2 + 8 + 1);
+        }
+
+        assertTrue(dispatcher.flush(10, TimeUnit.SECONDS));
+        assertEquals(100, delivered.get());
+        assertEquals(0, dispatcher.getPendingCount());
+        dispatcher.close(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testFailingObserverDoesNotStopDelivery() throws Exception {
+        AtomicInteger delivered = new AtomicInteger();
+        AsyncNotificationDispatcher dispatcher = new AsyncNotificationDispatcher(
+            (user, message) -> {
+                if (message.equals("bad")) throw new IllegalStateException("SMTP down");
+                delivered.incrementAndGet();
+            }, 2, 16, 4);
+
+        User user = new User("u1", "Name", "pass");
+        dispatcher.submit(user, "bad");
+        dispatcher.submit(user, "good");
+
+        assertTrue(dispatcher.flush(5, TimeUnit.SECONDS));
+        assertEquals(1, delivered.get());
+        dispatcher.close(1, TimeUnit.SECONDS);
+
+        dispatcher.submit(user, "after close");
+        assertEquals(2, delivered.get());
+    }
+
+    @Test
+    void testCloseTimeoutStillDeliversEverythingQueued() throws Exception {
+        AtomicInteger delivered = new AtomicInteger();
+        AsyncNotificationDispatcher dispatcher = new AsyncNotificationDispatcher(
+            (user, message) -> {
+                sleep(20);
+                delivered.incrementAndGet();
+            }, 1, 16, 1);
+
+        User user = new User("u1", "Name", "pass");
+        for (int i = 0; i < 10; i++) {
+            dispatcher.submit(user, "message " + i);
+        }
+        dispatcher.close(1, TimeUnit.MILLISECONDS);
+
+        assertTrue(dispatcher.flush(5, TimeUnit.SECONDS));
+        assertEquals(10, delivered.get());
+    }
+
+    @Test
+    void testAsyncDispatchCannotBeEnabledTwice() throws Exception {
+        ReminderService reminderService = new ReminderService(mock(LoanRepository.class), LocalDate::now);
+        reminderService.enableAsyncDispatch(1, 4, 1);
+        assertThrows(IllegalStateException.class, () -> reminderService.enableAsyncDispatch(1, 4, 1));
+        reminderService.shutdown(1, TimeUnit.SECONDS);
+        reminderService.enableAsyncDispatch(1, 4, 1);
+        reminderService.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testInvalidConfigurationIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new AsyncNotificationDispatcher((user, message) -> { }, 0, 1, 1));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.library.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.library.domain.*;
+import com.library.repository.ColumnarLoanRepository;
+
+class ColumnarLoanRepositoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String loanFile;
+    private ColumnarLoanRepository loanRepo;
+    private User alice;
+    private User bob;
+
+    @BeforeEach
+    void setUp() {
+        loanFile = tempDir.resolve("loans.dat").toString();
+        loanRepo = new ColumnarLoanRepository(loanFile);
+        alice = new User("u1", "Alice", "pass");
+        bob = new User("u2", "Bob", "pass");
+    }
+
+    @Test
+    void testQueriesReturnViewsOfActiveLoans() {
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        Book book = new Book("1", "T", "A");
+        loanRepo.save(new Loan(book, alice, start));
+        loanRepo.save(new Loan(new CD("2", "Album", "Band"), alice, start));
+        loanRepo.save(new Loan(new Book("3", "Other", "B"), bob, start.plusDays(1)));
+
+        assertEquals(3, loanRepo.findAllActiveLoans().size());
+        assertEquals(2, loanRepo.findActiveLoansByUser(alice).size());
+        Loan view = loanRepo.findActiveLoanByItem("1").orElseThrow(AssertionError::new);
+        assertSame(book, view.getItem());
+        assertSame(alice, view.getUser());
+        assertEquals(start, view.getBorrowDate());
+        assertEquals(start.plusDays(28), view.getDueDate());
+
+        List<Loan> due = loanRepo.findLoansDueBefore(start.plusDays(29));
+        assertEquals(2, due.size());
+        assertEquals("2", due.get(0).getItem().getId());
+        assertEquals("1", due.get(1).getItem().getId());
+        assertTrue(loanRepo.findLoansDueBefore(start.plusDays(7)).isEmpty());
+    }
+
+    @Test
+    void testStreamsSeeTheRowsAsTheyWereWhenOpened() {
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < 600; i++) {
+            loanRepo.save(new Loan(new Book("b" + i, "T", "A"), i % 2 == 0 ? alice : bob, start.plusDays(i % 30)));
+        }
+        LocalDate cutoff = start.plusDays(45);
+        List<String> expected = itemIds(loanRepo.findLoansDueBefore(cutoff));
+
+        Stream<Loan> due = loanRepo.streamLoansDueBefore(cutoff);
+        Loan first = loanRepo.findActiveLoanByItem("b0").orElseThrow(AssertionError::new);
+        first.returnItem();
+        loanRepo.save(first);
+
+        assertEquals(expected, itemIds(due.collect(Collectors.toList())));
+        assertEquals(599, loanRepo.streamActiveLoans().count());
+        assertEquals(itemIds(loanRepo.findAllActiveLoans()), itemIds(loanRepo.streamActiveLoans().collect(Collectors.toList())));
+    }
+
+    private static List<String> itemIds(List<Loan> loans) {
+        return loans.stream().map(loan -> loan.getItem().getId()).collect(Collectors.toList());
+    }
+
+    @Test
+    void testReturningAViewRemovesItsRowAndKeepsOthersConsistent() {
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < 10; i++) {
+            loanRepo.save(new Loan(new Book("b" + i, "T", "A"), i % 2 == 0 ? alice : bob, start.plusDays(i)));
+        }
+
+        for (int i = 0; i < 10; i += 3) {
+            Loan view = loanRepo.findActiveLoanByItem("b" + i).orElseThrow(AssertionError::new);
+            view.returnItem();
+            loanRepo.save(view);
+        }
+
+        assertEquals(6, loanRepo.findAllActiveLoans().size());
+        assertEquals(3, loanRepo.findActiveLoansByUser(alice).size());
+        assertEquals(3, loanRepo.findActiveLoansByUser(bob).size());
+        assertFalse(loanRepo.findActiveLoanByItem("b9").isPresent());
+        assertEquals(start.plusDays(8), loanRepo.findActiveLoanByItem("b8").orElseThrow(AssertionError::new).getBorrowDate());
+        assertEquals(2, loanRepo.findLoanHistoryByItem("b0").size() + loanRepo.findLoanHistoryByItem("b1").size());
+        assertEquals(5, loanRepo.findLoanHistoryByUser("u2").size());
+    }
+
+    @Test
+    void testSecondActiveLoanForAnItemIsRejected() {
+        Book dune = new Book("1", "Dune", "Herbert");
+        Loan first = new Loan(dune, alice, LocalDate.of(2024, 1, 1));
+        loanRepo.save(first);
+
+        assertThrows(IllegalStateException.class, () -> loanRepo.save(new Loan(dune, bob, LocalDate.of(2024, 1, 2))));
+        Book emma = new Book("2", "Emma", "Austen");
+        assertThrows(IllegalStateException.class, () -> loanRepo.saveAll(Arrays.asList(
+            new Loan(emma, bob, LocalDate.of(2024, 1, 2)), new Loan(dune, bob, LocalDate.of(2024, 1, 2)))));
+        assertEquals(1, loanRepo.findAllActiveLoans().size());
+        assertEquals(1, loanRepo.findLoansDueBefore(LocalDate.of(2025, 1, 1)).size());
+        assertFalse(loanRepo.getLoanSummary(bob).hasActiveLoans());
+
+        // Returned and lent again in one batch.
+        first.returnItem();
+        loanRepo.saveAll(Arrays.asList(first, new Loan(dune, bob, LocalDate.of(2024, 1, 2))));
+        assertEquals("u2", loanRepo.findActiveLoanByItem("1").orElseThrow(AssertionError::new).getUser().getId());
+        assertEquals(1, new ColumnarLoanRepository(loanFile).findAllActiveLoans().size());
+    }
+
+    @Test
+    void testBatchedBorrowsAndReturnsSurviveRestart() {
+        LocalDate today = LocalDate.of(2024, 1, 1);
+        LoanService loanService = new LoanService(loanRepo, () -> today);
+        Book dune = new Book("1", "Dune", "Herbert");
+        Book emma = new Book("2", "Emma", "Austen");
+        CD album = new CD("3", "Album", "Band");
+        loanService.borrowItems(alice, Arrays.asList(dune, emma, album));
+
+        // The same item scanned twice is only returned once, even though views are new objects.
+        List<String> results = loanService.returnItems(Arrays.asList("1", "3", "1"));
+        assertEquals(Arrays.asList("Success: Returned Dune.", "Success: Returned Album.", "Error: Item is not on loan."),
+            results);
+        assertFalse(dune.isBorrowed());
+        assertTrue(emma.isBorrowed());
+
+        ColumnarLoanRepository reloaded = new ColumnarLoanRepository(loanFile);
+        assertEquals(1, reloaded.findAllActiveLoans().size());
+        assertEquals("2", reloaded.findAllActiveLoans().get(0).getItem().getId());
+        assertEquals(3, reloaded.findLoanHistoryByUser("u1").size());
+        assertEquals(1, reloaded.findLoanHistoryByItem("1").size());
+    }
+
+    @Test
+    void testLoansSurviveRestart() {
+        Loan kept = new Loan(new Book("1", "T", "A"), alice, LocalDate.of(2024, 1, 1));
+        Loan returned = new Loan(new CD("2", "Album", "Band"), alice, LocalDate.of(2024, 1, 2));
+        loanRepo.save(kept);
+        loanRepo.save(returned);
+        returned.returnItem();
+        loanRepo.save(returned);
+
+        ColumnarLoanRepository reloaded = new ColumnarLoanRepository(loanFile);
+        List<Loan> active = reloaded.findAllActiveLoans();
+        assertEquals(1, active.size());
+        assertEquals("1", active.get(0).getItem().getId());
+        assertTrue(active.get(0).getItem().isBorrowed());
+        assertEquals(2, reloaded.findLoanHistoryByUser("u1").size());
+    }
+}
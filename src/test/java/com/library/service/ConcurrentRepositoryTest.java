@@ -0,0 +1,243 @@
+package com.library.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.library.domain.*;
+import com.library.repository.*;
+
+class ConcurrentRepositoryTest {
+
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 500;
+
+    private ExecutorService pool;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void testConcurrentItemSavesAreNotLost() throws Exception {
+        InMemoryItemRepository repo = new InMemoryItemRepository();
+
+        runConcurrently(t -> {
+            for (int i = 0; i < PER_THREAD; i++) {
+                repo.save(new Book("t" + t + "-" + i, "Stress Title " + i, "Author " + t));
+            }
+        });
+
+        assertEquals(THREADS * PER_THREAD, repo.search("stress title").size());
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < PER_THREAD; i++) {
+                assertTrue(repo.findById("t" + t + "-" + i).isPresent());
+            }
+        }
+    }
+
+    @Test
+    void testConcurrentUpdatesOfOneItemLeaveIndexConsistent() throws Exception {
+        InMemoryItemRepository repo = new InMemoryItemRepository();
+
+        runConcurrently(t -> {
+            for (int i = 0; i < PER_THREAD; i++) {
+                repo.save(new Book("hot", "Version " + t + "x" + i, "Author"));
+            }
+        });
+
+        String title = repo.findById("hot").orElseThrow(AssertionError::new).getTitle();
+        List<LibraryItem> matches = repo.searchByTitle("version ");
+        assertEquals(1, matches.size());
+        assertEquals(title, matches.get(0).getTitle());
+    }
+
+    @Test
+    void testSavedItemIsVisibleToLookupsStartedAfterSave() throws Exception {
+        InMemoryItemRepository repo = new InMemoryItemRepository();
+        AtomicInteger published = new AtomicInteger(-1);
+        int total = THREADS * PER_THREAD;
+
+        Future<?> writer = pool.submit(() -> {
+            for (int i = 0; i < total; i++) {
+                repo.save(new CD("cd-" + i, "Album " + i, "Artist"));
+                published.set(i);
+            }
+        });
+        List<Future<?>> readers = new ArrayList<>();
+        for (int r = 0; r < THREADS - 1; r++) {
+            readers.add(pool.submit(() -> {
+                int last;
+                do {
+                    last = published.get();
+                    if (last >= 0) {
+                        assertTrue(repo.findById("cd-" + last).isPresent());
+                    }
+                } while (last < total - 1);
+            }));
+        }
+
+        writer.get(30, TimeUnit.SECONDS);
+        for (Future<?> reader : readers) {
+            reader.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void testConcurrentUserSavesAndDeletes() throws Exception {
+        InMemoryUserRepository repo = new InMemoryUserRepository();
+
+        runConcurrently(t -> {
+            for (int i = 0; i < PER_THREAD; i++) {
+                User user = repo.save(new User("u" + t + "-" + i, "Name", "pass"));
+                if (i % 2 == 1) {
+                    repo.delete(user);
+                }
+            }
+        });
+
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < PER_THREAD; i++) {
+                assertEquals(i % 2 == 0, repo.findById("u" + t + "-" + i).isPresent());
+            }
+        }
+    }
+
+    @Test
+    void testConcurrentLoanSavesAreJournaledAndIndexed() throws Exception {
+        String file = tempDir.resolve("loans.dat").toString();
+        InMemoryLoanRepository repo = new InMemoryLoanRepository(file);
+        LocalDate today = LocalDate.of(2024, 1, 1);
+
+        runConcurrently(t -> {
+            User user = new User("u" + t, "Name", "pass");
+            for (int i = 0; i < PER_THREAD; i++) {
+                Loan loan = new Loan(new Book("b" + t + "-" + i, "T", "A"), user, today);
+                repo.save(loan);
+                if (i % 2 == 1) {
+                    loan.returnItem();
+                    repo.save(loan);
+                }
+                repo.findActiveLoansByUser(user);
+            }
+        });
+
+        int active = THREADS * PER_THREAD / 2;
+        assertEquals(active, repo.findAllActiveLoans().size());
+        for (int t = 0; t < THREADS; t++) {
+            assertEquals(PER_THREAD / 2, repo.findActiveLoansByUser(new User("u" + t, "", "")).size());
+        }
+        assertEquals(active, new InMemoryLoanRepository(file).findAllActiveLoans().size());
+    }
+
+    @Test
+    void testConcurrentBorrowersOfOneItemOnlyOneSucceeds() throws Exception {
+        InMemoryLoanRepository loanRepo = new InMemoryLoanRepository(tempDir.resolve("loans.dat").toString());
+        LocalDate today = LocalDate.of(2024, 1, 1);
+        LoanService loanService = new LoanService(loanRepo, () -> today);
+        Book contested = new Book("hot", "Bestseller", "Author");
+        AtomicInteger successes = new AtomicInteger();
+
+        runConcurrently(t -> {
+            if (loanService.borrowItem(new User("u" + t, "Name", "pass"), contested).startsWith("Success")) {
+                successes.incrementAndGet();
+            }
+        });
+
+        assertEquals(1, successes.get());
+        assertEquals(1, loanRepo.findAllActiveLoans().size());
+        assertTrue(contested.isBorrowed());
+    }
+
+    @Test
+    void testConcurrentReturnsRecordEachLoanOnce() throws Exception {
+        String loanFile = tempDir.resolve("loans.dat").toString();
+        InMemoryLoanRepository loanRepo = new InMemoryLoanRepository(loanFile);
+        LocalDate today = LocalDate.of(2024, 1, 1);
+        LoanService loanService = new LoanService(loanRepo, () -> today);
+        User user = new User("u1", "Name", "pass");
+        List<String> itemIds = new ArrayList<>();
+        for (int i = 0; i < PER_THREAD; i++) {
+            loanService.borrowItem(user, new Book("b" + i, "Title", "Author"));
+            itemIds.add("b" + i);
+        }
+        AtomicInteger successes = new AtomicInteger();
+
+        // Every desk scans every item, half of them as one batch.
+        runConcurrently(t -> {
+            List<String> results = new ArrayList<>();
+            if (t % 2 == 0) {
+                results.addAll(loanService.returnItems(itemIds));
+            } else {
+                for (String itemId : itemIds) {
+                    results.add(loanService.returnItem(itemId));
+                }
+            }
+            results.stream().filter(result -> result.startsWith("Success")).forEach(result -> successes.incrementAndGet());
+        });
+
+        assertEquals(PER_THREAD, successes.get());
+        assertTrue(loanRepo.findAllActiveLoans().isEmpty());
+        assertEquals(1, new InMemoryLoanRepository(loanFile).findLoanHistoryByItem("b7").size());
+    }
+
+    @Test
+    void testConcurrentSavesOfOneUserStoreTheLatestBalance() throws Exception {
+        String userFile = tempDir.resolve("users.dat").toString();
+        FileUserRepository userRepo = new FileUserRepository(userFile);
+        User user = userRepo.save(new User("u1", "Alice", "pass"));
+
+        // Fine accrual and the desk both charge and save the same user.
+        runConcurrently(t -> {
+            for (int i = 0; i < PER_THREAD; i++) {
+                user.addFine(Money.ofMinorUnits(1));
+                userRepo.save(user);
+            }
+        });
+        userRepo.close();
+
+        User reloaded = new FileUserRepository(userFile).findById("u1").orElseThrow(AssertionError::new);
+        assertEquals(Money.ofMinorUnits(THREADS * PER_THREAD), reloaded.getFineBalance());
+    }
+
+    private void runConcurrently(ThreadTask task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                task.run(thread);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThreadTask {
+        void run(int thread);
+    }
+}
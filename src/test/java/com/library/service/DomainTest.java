@@ -69,4 +69,26 @@ class DomainTest {
         CDFineStrategy cs = new CDFineStrategy();
         assertEquals(100.0, cs.calculateFine(5));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testBorrowStateTransitionsBumpVersion() {
+        Book b = new Book("1", "Title", "Author");
+        long initial = b.getVersion();
+
+        assertTrue(b.tryBorrow());
+        assertFalse(b.tryBorrow());
+        assertTrue(b.isBorrowed());
+        assertEquals(initial + 1, b.getVersion());
+
+        assertTrue(b.tryReturn());
+        assertFalse(b.tryReturn());
+        assertFalse(b.isBorrowed());
+
+        long seen = b.getVersion();
+        b.setBorrowed(true);
+        b.setBorrowed(false);
+        assertFalse(b.compareAndSetBorrowed(seen, true), "Stale version must be rejected");
+        assertTrue(b.compareAndSetBorrowed(b.getVersion(), true));
+        assertTrue(b.isBorrowed());
+    }
+}
@@ -0,0 +1,239 @@
+package com.library.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.library.domain.*;
+import com.library.repository.*;
+
+class FineLedgerTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    @TempDir
+    Path tempDir;
+
+    private LocalDate today;
+    private InMemoryUserRepository userRepo;
+    private InMemoryLoanRepository loanRepo;
+    private String ledgerFile;
+    private FineLedger ledger;
+    private User alice;
+
+    @BeforeEach
+    void setUp() {
+        today = START;
+        userRepo = new InMemoryUserRepository();
+        loanRepo = new InMemoryLoanRepository(tempDir.resolve("loans.dat").toString());
+        ledgerFile = tempDir.resolve("fines.dat").toString();
+        ledger = newLedger();
+        alice = userRepo.save(new User("u1", "Alice", "pass"));
+    }
+
+    private FineLedger newLedger() {
+        return new FineLedger(loanRepo, userRepo, new FileFineLedgerRepository(ledgerFile), () -> today);
+    }
+
+    @Test
+    void testAccruesOncePerDayPerOverdueLoan() {
+        loanRepo.save(new Loan(new Book("1", "Dune", "Herbert"), alice, START));
+        loanRepo.save(new Loan(new CD("2", "Abbey Road", "Beatles"), alice, START));
+
+        today = START.plusDays(7);
+        assertEquals(0, ledger.accrue());
+        today = START.plusDays(8);
+        assertEquals(1, ledger.accrue());
+        assertEquals(20.0, alice.getFinesOwed());
+        assertEquals(0, ledger.accrue());
+        assertEquals(20.0, alice.getFinesOwed());
+
+        today = START.plusDays(29);
+        assertEquals(2, ledger.accrue());
+        assertEquals(20.0 * 22 + 10.0, alice.getFinesOwed());
+    }
+
+    @Test
+    void testCatchUpChargesTheSameAsDailyRuns() {
+        loanRepo.save(new Loan(new CD("2", "Abbey Road", "Beatles"), alice, START));
+        today = START.plusDays(10);
+        ledger.accrue();
+
+        today = START.plusDays(20);
+        ledger = newLedger();
+        assertEquals(1, ledger.accrue());
+        assertEquals(20.0 * 13, alice.getFinesOwed());
+
+        List<FineEntry> statement = ledger.getStatement(alice);
+        assertEquals(2, statement.size());
+        assertEquals(START.plusDays(10).toEpochDay(), statement.get(1).getFromEpochDay());
+        assertEquals(Money.of(200.0), statement.get(1).getAmount());
+    }
+
+    @Test
+    void testNothingIsChargedUnlessTheLedgerStoredIt() throws Exception {
+        loanRepo.save(new Loan(new CD("2", "Abbey Road", "Beatles"), alice, START));
+        today = START.plusDays(10);
+        Path ledgerPath = Paths.get(ledgerFile);
+        Files.createDirectory(ledgerPath); // appends to it fail
+        assertEquals(0, ledger.accrue());
+        assertEquals(0.0, alice.getFinesOwed());
+
+        Files.delete(ledgerPath);
+        assertEquals(1, ledger.accrue());
+        assertEquals(60.0, alice.getFinesOwed());
+    }
+
+    @Test
+    void testUnreadableLedgerIsLeftAloneAndChargesNothing() throws Exception {
+        loanRepo.save(new Loan(new CD("2", "Abbey Road", "Beatles"), alice, START));
+        Path ledgerPath = Paths.get(ledgerFile);
+        Files.write(ledgerPath, "not a fine ledger".getBytes(StandardCharsets.US_ASCII));
+
+        today = START.plusDays(10);
+        assertEquals(0, newLedger().accrue());
+        assertEquals(0.0, alice.getFinesOwed());
+        assertEquals("not a fine ledger", new String(Files.readAllBytes(ledgerPath), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void testPaymentsAppearOnTheStatement() {
+        loanRepo.save(new Loan(new Book("1", "Dune", "Herbert"), alice, START));
+        today = START.plusDays(30);
+        ledger.accrue();
+
+        FineService fineService = new FineService(ledger);
+        assertEquals(Money.of(20.0), fineService.getOutstandingBalance(alice));
+        assertTrue(fineService.payFine(alice, 15.0));
+
+        List<FineEntry> statement = newLedger().getStatement(alice);
+        assertEquals(2, statement.size());
+        assertTrue(statement.get(1).isPayment());
+        assertEquals(Money.of(-15.0), statement.get(1).getAmount());
+        assertEquals(Money.of(5.0), fineService.getOutstandingBalance(alice));
+    }
+
+    @Test
+    void testReturnSettlesTheFineAndFreesTheItem() {
+        Book dune = new Book("1", "Dune", "Herbert");
+        CD abbeyRoad = new CD("2", "Abbey Road", "Beatles");
+        LoanService loanService = new LoanService(loanRepo, () -> today, ledger);
+        today = START;
+        assertTrue(loanService.borrowItem(alice, dune).startsWith("Success"));
+        assertTrue(loanService.borrowItem(alice, abbeyRoad).startsWith("Success"));
+
+        today = START.plusDays(30);
+        ledger.accrue();
+        assertEquals(20.0 * 23 + 10.0 * 2, alice.getFinesOwed());
+
+        today = START.plusDays(33);
+        List<String> results = loanService.returnItems(Arrays.asList("2", "1", "2"));
+        assertEquals("Success: Returned Abbey Road. Fine charged: 60.00", results.get(0));
+        assertEquals("Success: Returned Dune. Fine charged: 30.00", results.get(1));
+        assertEquals("Error: Item is not on loan.", results.get(2));
+
+        assertFalse(dune.isBorrowed());
+        assertFalse(abbeyRoad.isBorrowed());
+        assertTrue(loanRepo.findAllActiveLoans().isEmpty());
+        assertEquals(20.0 * 26 + 10.0 * 5, alice.getFinesOwed());
+        // Returned loans are no longer charged, and the ledger's watermark did not move.
+        assertEquals(START.plusDays(30).toEpochDay(), ledger.getAccruedThrough());
+        assertEquals(0, ledger.accrue());
+        assertEquals(20.0 * 26 + 10.0 * 5, alice.getFinesOwed());
+    }
+
+    @Test
+    void testAccrualStartedDuringAReturnStillLeavesTheFineCharged() throws Exception {
+        ExecutorService scheduler = Executors.newSingleThreadExecutor();
+        List<Future<Integer>> accruals = new ArrayList<>();
+        FineLedger[] racingLedger = new FineLedger[1];
+        InMemoryLoanRepository racingRepo = new InMemoryLoanRepository(tempDir.resolve("racing.dat").toString()) {
+            @Override
+            public void saveAll(List<Loan> loans) {
+                super.saveAll(loans);
+                // The nightly run fires once the returned loan has left the overdue scan.
+                Future<Integer> accrual = scheduler.submit(racingLedger[0]::accrue);
+                accruals.add(accrual);
+                try {
+                    accrual.get(200, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // Waiting for the return to be charged.
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        racingLedger[0] = new FineLedger(racingRepo, userRepo, new FileFineLedgerRepository(ledgerFile), () -> today);
+        User bob = userRepo.save(new User("u2", "Bob", "pass"));
+        Book dune = new Book("1", "Dune", "Herbert");
+        racingRepo.save(new Loan(dune, alice, START));
+        racingRepo.save(new Loan(new Book("2", "Emma", "Austen"), bob, START));
+        LoanService loanService = new LoanService(racingRepo, () -> today, racingLedger[0]);
+
+        today = START.plusDays(30);
+        String result = loanService.returnItem("1");
+        assertEquals(1, (int) accruals.get(0).get(5, TimeUnit.SECONDS));
+        scheduler.shutdown();
+
+        Money fine = Money.of(dune.calculateFine(30 - dune.getLoanPeriodDays()));
+        assertEquals("Success: Returned Dune. Fine charged: " + fine, result);
+        assertEquals(fine, alice.getFineBalance());
+        assertEquals(fine, bob.getFineBalance());
+        assertEquals(today.toEpochDay(), racingLedger[0].getAccruedThrough());
+    }
+
+    @Test
+    void testConcurrentAccrualsAndPaymentsAreNeverLost() throws Exception {
+        int threads = 8;
+        int perThread = 10_000;
+        FineService fineService = new FineService();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicLong paidMinorUnits = new AtomicLong();
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            boolean payer = t % 2 == 0;
+            tasks.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    if (payer) {
+                        paidMinorUnits.addAndGet(alice.payFine(Money.ofMinorUnits(7)).getMinorUnits());
+                    } else {
+                        alice.addFine(Money.of(0.10));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        pool.shutdown();
+
+        long accrued = (threads / 2) * perThread * 10L;
+        assertEquals(accrued - paidMinorUnits.get(), alice.getFineBalance().getMinorUnits());
+        assertTrue(alice.getFineBalance().getMinorUnits() >= 0);
+        fineService.payFine(alice, alice.getFineBalance());
+        assertEquals(Money.ZERO, alice.getFineBalance());
+    }
+}
@@ -0,0 +1,183 @@
+package com.library.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.library.domain.*;
+import com.library.metrics.MetricsRegistry;
+import com.library.repository.*;
+
+class HoldServiceTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    @TempDir
+    Path tempDir;
+
+    private LocalDate today;
+    private LoanService loanService;
+    private HoldService holdService;
+    private List<String> notices;
+    private Book dune;
+    private User alice;
+    private User bob;
+    private User carol;
+
+    @BeforeEach
+    void setUp() {
+        today = START;
+        InMemoryItemRepository itemRepo = new InMemoryItemRepository();
+        InMemoryLoanRepository loanRepo = new InMemoryLoanRepository(tempDir.resolve("loans.dat").toString());
+        loanService = new LoanService(loanRepo, () -> today);
+        holdService = new HoldService(itemRepo, loanRepo, () -> today, 3, new MetricsRegistry());
+        loanService.enableHolds(holdService);
+        notices = new ArrayList<>();
+        holdService.registerObserver((user, message) -> notices.add(user.getId() + ": " + message));
+
+        dune = new Book("1", "Dune", "Herbert");
+        itemRepo.save(dune);
+        alice = new User("u1", "Alice", "pass");
+        bob = new User("u2", "Bob", "pass");
+        carol = new User("u3", "Carol", "pass");
+    }
+
+    @Test
+    void testReturnedItemGoesToTheFirstHolder() {
+        assertEquals("Error: Item is available. Borrow it instead.", holdService.placeHold(bob, "1"));
+        loanService.borrowItem(alice, dune);
+
+        assertEquals("Error: You already have this item.", holdService.placeHold(alice, "1"));
+        assertTrue(holdService.placeHold(bob, "1").endsWith("Position in queue: 1"));
+        assertTrue(holdService.placeHold(carol, "1").endsWith("Position in queue: 2"));
+        assertEquals("Error: You already have a hold on this item.", holdService.placeHold(carol, "1"));
+
+        loanService.returnItem("1");
+        assertEquals(1, notices.size());
+        assertEquals("u2: 'Dune' is ready for pickup until 2024-01-04.", notices.get(0));
+        assertFalse(dune.isBorrowed());
+        assertEquals(1, holdService.getPosition(carol, "1"));
+
+        assertEquals("Error: Item is on hold for another patron.", loanService.borrowItem(carol, dune));
+        assertFalse(dune.isBorrowed());
+        assertTrue(loanService.borrowItem(bob, dune).startsWith("Success"));
+        assertEquals(0, holdService.getReadyHoldCount());
+
+        loanService.returnItem("1");
+        assertEquals("u3: 'Dune' is ready for pickup until 2024-01-04.", notices.get(1));
+        assertEquals(0, holdService.getWaitingHoldCount());
+    }
+
+    @Test
+    void testUnclaimedHoldExpiresAndPassesOn() {
+        loanService.borrowItem(alice, dune);
+        holdService.placeHold(bob, "1");
+        holdService.placeHold(carol, "1");
+        loanService.returnItem("1");
+
+        today = START.plusDays(3);
+        assertEquals(0, holdService.expireHolds());
+        today = START.plusDays(4);
+        assertEquals(1, holdService.expireHolds());
+        assertEquals("u2: Your hold on 'Dune' has expired.", notices.get(1));
+        assertEquals("u3: 'Dune' is ready for pickup until 2024-01-08.", notices.get(2));
+
+        assertEquals("Success: Hold cancelled.", holdService.cancelHold(carol, "1"));
+        assertEquals(0, holdService.getReadyHoldCount());
+        assertTrue(loanService.borrowItem(alice, dune).startsWith("Success"));
+        today = START.plusDays(30);
+        assertEquals(0, holdService.expireHolds());
+    }
+
+    @Test
+    void testBatchBorrowSkipsItemsHeldForOthers() {
+        CD album = new CD("2", "Album", "Band");
+        loanService.borrowItem(alice, dune);
+        holdService.placeHold(bob, "1");
+        loanService.returnItem("1");
+
+        List<String> results = loanService.borrowItems(carol, Arrays.asList(dune, album), true);
+        assertEquals("Error: Item is on hold for another patron.", results.get(0));
+        assertFalse(album.isBorrowed());
+
+        results = loanService.borrowItems(bob, Arrays.asList(dune, album), true);
+        assertTrue(results.get(0).startsWith("Success"));
+        assertTrue(results.get(1).startsWith("Success"));
+        assertEquals(0, holdService.getReadyHoldCount());
+    }
+
+    @Test
+    void testExpiryLeavesAClaimedPickupAloneButNotAnotherBorrowersAttempt() {
+        loanService.borrowItem(alice, dune);
+        holdService.placeHold(bob, "1");
+        loanService.returnItem("1");
+        today = START.plusDays(4);
+
+        // Carol wins the compare-and-set, so the item looks borrowed, but the hold is still Bob's.
+        assertTrue(dune.tryBorrow());
+        assertEquals(1, holdService.expireHolds());
+        assertEquals("u2: Your hold on 'Dune' has expired.", notices.get(1));
+        assertTrue(holdService.claim(carol, dune));
+        dune.tryReturn();
+
+        loanService.returnItem("1");
+        holdService.placeHold(bob, "1");
+        loanService.borrowItem(alice, dune);
+        holdService.placeHold(carol, "1");
+        loanService.returnItem("1");
+        assertTrue(dune.tryBorrow());
+        assertTrue(holdService.claim(carol, dune));
+        today = START.plusDays(30);
+        assertEquals(0, holdService.expireHolds());
+        holdService.pickedUp(carol, dune);
+        assertEquals(0, holdService.getReadyHoldCount());
+    }
+
+    @Test
+    void testHoldsSurviveARestart() throws IOException {
+        InMemoryItemRepository itemRepo = new InMemoryItemRepository();
+        InMemoryUserRepository userRepo = new InMemoryUserRepository();
+        Book nemo = new Book("2", "Nemo", "Verne");
+        itemRepo.save(dune);
+        itemRepo.save(nemo);
+        userRepo.save(alice);
+        userRepo.save(bob);
+        userRepo.save(carol);
+        String holdFile = tempDir.resolve("holds.dat").toString();
+        InMemoryLoanRepository loanRepo = new InMemoryLoanRepository(tempDir.resolve("held.dat").toString());
+        LoanService loans = new LoanService(loanRepo, () -> today);
+        FileHoldRepository holdRepo = new FileHoldRepository(holdFile);
+        HoldService holds = new HoldService(itemRepo, loanRepo, userRepo, holdRepo, () -> today, 3, new MetricsRegistry());
+        loans.enableHolds(holds);
+
+        loans.borrowItem(alice, dune);
+        loans.borrowItem(alice, nemo);
+        holds.placeHold(bob, "1");
+        holds.placeHold(carol, "1");
+        holds.placeHold(carol, "2");
+        loans.returnItem("1");
+        holdRepo.close();
+
+        holdRepo = new FileHoldRepository(holdFile);
+        holds = new HoldService(itemRepo, loanRepo, userRepo, holdRepo, () -> today, 3, new MetricsRegistry());
+        assertEquals(2, holds.getWaitingHoldCount());
+        assertEquals(1, holds.getReadyHoldCount());
+        assertEquals(1, holds.getPosition(carol, "1"));
+        assertTrue(holds.isReservedForOther(carol, dune));
+        assertFalse(holds.isReservedForOther(bob, dune));
+
+        today = START.plusDays(4);
+        assertEquals(1, holds.expireHolds());
+        assertTrue(holds.isReservedForOther(bob, dune));
+        holdRepo.close();
+    }
+}
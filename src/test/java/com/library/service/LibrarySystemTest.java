@@ -1,12 +1,17 @@
 package com.library.service;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.and;
 import static org.mockito.Mockito.*;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -114,6 +119,7 @@ class LibrarySystemTest {
         Book book = new Book("1", "Title", "Auth");
         LocalDate today = LocalDate.of(2023, 1, 1);
         when(timeProvider.getDate()).thenReturn(today);
+        when(loanRepo.getLoanSummary(user)).thenReturn(LoanSummary.NONE);
 
         String result = loanService.borrowItem(user, book);
         assertTrue(result.contains("Success"));
@@ -126,11 +132,50 @@ class LibrarySystemTest {
         CD cd = new CD("1", "Title", "Artist");
         LocalDate today = LocalDate.of(2023, 1, 1);
         when(timeProvider.getDate()).thenReturn(today);
+        when(loanRepo.getLoanSummary(user)).thenReturn(LoanSummary.NONE);
 
         loanService.borrowItem(user, cd);
         verify(loanRepo).save(any(Loan.class));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBorrowItemsLendsWhatIsAvailableWithOneSave() {
+        User user = new User("u1", "Alice", "pass");
+        Book first = new Book("1", "First", "Auth");
+        Book taken = new Book("2", "Taken", "Auth");
+        CD last = new CD("3", "Last", "Artist");
+        taken.setBorrowed(true);
+        when(timeProvider.getDate()).thenReturn(LocalDate.of(2023, 1, 1));
+        when(loanRepo.getLoanSummary(user)).thenReturn(LoanSummary.NONE);
+
+        List<String> results = loanService.borrowItems(user, Arrays.asList(first, taken, last));
+
+        assertEquals(Arrays.asList("Success: Borrowed First. Due: 2023-01-29", "Error: Item is already borrowed.",
+            "Success: Borrowed Last. Due: 2023-01-08"), results);
+        assertTrue(first.isBorrowed());
+        assertTrue(last.isBorrowed());
+        verify(loanRepo).getLoanSummary(user);
+        verify(loanRepo).saveAll(argThat(loans -> loans.size() == 2));
+        verify(loanRepo, never()).save(any());
+    }
+
+    @Test
+    void testBorrowItemsAllOrNothingLendsNothingIfOneIsTaken() {
+        User user = new User("u1", "Alice", "pass");
+        Book first = new Book("1", "First", "Auth");
+        Book taken = new Book("2", "Taken", "Auth");
+        taken.setBorrowed(true);
+        when(loanRepo.getLoanSummary(user)).thenReturn(LoanSummary.NONE);
+
+        List<String> results = loanService.borrowItems(user, Arrays.asList(first, taken), true);
+
+        assertEquals("Error: Not borrowed, another item is unavailable.", results.get(0));
+        assertEquals("Error: Item is already borrowed.", results.get(1));
+        assertFalse(first.isBorrowed());
+        verify(loanRepo, never()).saveAll(any());
+    }
+
     @Test
     void testBorrowBlockedIfFines() {
         User user = new User("u1", "Debtor", "pass");
@@ -158,11 +203,8 @@ class LibrarySystemTest {
         User user = new User("u1", "Alice", "pass");
         Book book = new Book("1", "Title", "Auth");
         LocalDate today = LocalDate.of(2023, 1, 1);
-        when(timeProvider.getDate()).thenReturn(today);
-        
-        Loan overdueLoan = mock(Loan.class);
-        when(overdueLoan.isOverdue(today)).thenReturn(true);
-        when(loanRepo.findActiveLoansByUser(user)).thenReturn(Collections.singletonList(overdueLoan));
+        when(timeProvider.getEpochDay()).thenReturn(today.toEpochDay());
+        when(loanRepo.getLoanSummary(user)).thenReturn(LoanSummary.of(2, today.toEpochDay() - 1));
 
         String result = loanService.borrowItem(user, book);
         assertTrue(result.contains("overdue items"));
@@ -173,7 +215,7 @@ class LibrarySystemTest {
     void testUnregisterSuccess() {
         User user = new User("u1", "Clean", "pass");
         when(userRepo.findById("u1")).thenReturn(Optional.of(user));
-        when(loanRepo.findActiveLoansByUser(user)).thenReturn(Collections.emptyList());
+        when(loanRepo.getLoanSummary(user)).thenReturn(LoanSummary.NONE);
 
         assertTrue(userService.unregisterUser("u1").contains("Success"));
         verify(userRepo).delete(user);
@@ -199,7 +241,7 @@ class LibrarySystemTest {
     void testUnregisterFailActiveLoans() {
         User user = new User("u1", "Debtor", "pass");
         when(userRepo.findById("u1")).thenReturn(Optional.of(user));
-        when(loanRepo.findActiveLoansByUser(user)).thenReturn(Collections.singletonList(mock(Loan.class)));
+        when(loanRepo.getLoanSummary(user)).thenReturn(LoanSummary.of(1, LocalDate.of(2023, 1, 29).toEpochDay()));
         
         assertTrue(userService.unregisterUser("u1").contains("active loans"));
         verify(userRepo, never()).delete(any());
@@ -213,12 +255,11 @@ class LibrarySystemTest {
         User user = new User("u1", "A", "p");
         Book book = new Book("1", "T", "A");
         Loan mockLoan = mock(Loan.class);
-        when(mockLoan.isOverdue(today)).thenReturn(true);
         when(mockLoan.getUser()).thenReturn(user);
         when(mockLoan.getItem()).thenReturn(book);
-        when(mockLoan.getDueDate()).thenReturn(today.minusDays(1));
+        when(mockLoan.daysOverdue(today.toEpochDay())).thenReturn(1L);
         
-        when(loanRepo.findAllActiveLoans()).thenReturn(Collections.singletonList(mockLoan));
+        when(loanRepo.findLoansDueBefore(today)).thenReturn(Collections.singletonList(mockLoan));
         
         reminderService.registerObserver(mockObserver);
         reminderService.sendOverdueReminders();
@@ -226,17 +267,65 @@ class LibrarySystemTest {
         verify(mockObserver).update(eq(user), contains("overdue"));
     }
     
+    @Test
+    void testParallelScansMatchSequentialResults() {
+        LocalDate today = LocalDate.of(2023, 1, 1);
+        when(timeProvider.getDate()).thenReturn(today);
+        User user = new User("u1", "A", "p");
+        List<Loan> overdue = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            overdue.add(new Loan(new Book(String.valueOf(i), "Title " + i, "A"), user, today.minusDays(30 + i % 50)));
+        }
+        when(loanRepo.findLoansDueBefore(today)).thenReturn(overdue);
+        when(loanRepo.streamLoansDueBefore(today)).thenAnswer(invocation -> overdue.stream());
+
+        List<String> sequential = loanService.checkOverdueItems();
+        loanService.enableParallelScan(4, true);
+        assertEquals(sequential, loanService.checkOverdueItems());
+        loanService.enableParallelScan(4, false);
+        List<String> unordered = loanService.checkOverdueItems();
+        assertEquals(sequential.size(), unordered.size());
+        assertEquals(new HashSet<>(sequential), new HashSet<>(unordered));
+
+        List<String> reminders = new ArrayList<>();
+        reminderService.registerObserver((u, message) -> reminders.add(message));
+        reminderService.enableParallelScan(4, true);
+        reminderService.sendOverdueReminders();
+        assertEquals(10_000, reminders.size());
+        assertEquals("Item 'Title 0' is overdue by 2 days. Please return it.", reminders.get(0));
+        assertEquals("Item 'Title 9999' is overdue by 51 days. Please return it.", reminders.get(9999));
+    }
+
+    @Test
+    void testSendDigestsGroupsLoansPerUser() {
+        LocalDate today = LocalDate.of(2023, 1, 1);
+        when(timeProvider.getDate()).thenReturn(today);
+
+        User alice = new User("u1", "Alice", "p");
+        User bob = new User("u2", "Bob", "p");
+        Loan aliceBook = new Loan(new Book("1", "Dune", "Herbert"), alice, today.minusDays(30));
+        Loan aliceCd = new Loan(new CD("2", "Abbey Road", "Beatles"), alice, today.minusDays(10));
+        Loan bobBook = new Loan(new Book("3", "Emma", "Austen"), bob, today.minusDays(29));
+        when(loanRepo.findLoansDueBefore(today)).thenReturn(Arrays.asList(aliceCd, bobBook, aliceBook));
+
+        reminderService.registerObserver(mockObserver);
+        reminderService.sendOverdueDigests();
+
+        verify(mockObserver).update(eq(alice), and(contains("2 overdue item"), and(contains("Dune"), contains("Abbey Road"))));
+        verify(mockObserver).update(eq(bob), and(contains("1 overdue item"), contains("Emma")));
+        verify(mockObserver, times(2)).update(any(User.class), anyString());
+    }
+
     @Test
     void testCheckOverdueItems() {
         LocalDate today = LocalDate.of(2023, 1, 1);
         when(timeProvider.getDate()).thenReturn(today);
         
         Loan mockLoan = mock(Loan.class);
-        when(mockLoan.isOverdue(today)).thenReturn(true);
-        when(mockLoan.getDueDate()).thenReturn(today.minusDays(5));
+        when(mockLoan.daysOverdue(today.toEpochDay())).thenReturn(5L);
         when(mockLoan.getItem()).thenReturn(new Book("1","T","A"));
         
-        when(loanRepo.findAllActiveLoans()).thenReturn(Collections.singletonList(mockLoan));
+        when(loanRepo.streamLoansDueBefore(today)).thenReturn(Stream.of(mockLoan));
         
         List<String> report = loanService.checkOverdueItems();
         assertEquals(1, report.size());
@@ -0,0 +1,201 @@
+package com.library.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.library.domain.*;
+import com.library.metrics.MetricsRegistry;
+import com.library.repository.*;
+
+class MaintenanceSchedulerTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 3, 1);
+
+    @TempDir
+    Path tempDir;
+
+    private LocalDateTime now;
+    private TimeProvider timeProvider;
+    private Clock clock;
+    private String stateFile;
+
+    @BeforeEach
+    void setUp() {
+        now = START.atTime(7, 0);
+        timeProvider = () -> now.toLocalDate();
+        clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Instant instant() {
+                return now.toInstant(ZoneOffset.UTC);
+            }
+        };
+        stateFile = tempDir.resolve("jobs.dat").toString();
+    }
+
+    private MaintenanceScheduler newScheduler(List<Long> runs) {
+        MaintenanceScheduler scheduler =
+            new MaintenanceScheduler(clock, new FileJobStateRepository(stateFile), new MetricsRegistry());
+        scheduler.schedule("daily", LocalTime.of(8, 0), runs::add);
+        return scheduler;
+    }
+
+    @Test
+    void testRunsOncePerDayAndCatchesUpOnce() {
+        List<Long> runs = new ArrayList<>();
+        MaintenanceScheduler scheduler = newScheduler(runs);
+
+        assertEquals(0, scheduler.runDueJobs());
+        now = START.atTime(8, 0);
+        assertEquals(1, scheduler.runDueJobs());
+        assertEquals(0, scheduler.runDueJobs());
+        assertEquals(Arrays.asList(JobStateRepository.NEVER_RUN), runs);
+
+        // Down for three days; the restarted scheduler runs once, before today's slot.
+        now = START.plusDays(4).atTime(6, 0);
+        scheduler = newScheduler(runs);
+        assertEquals(1, scheduler.runDueJobs());
+        now = START.plusDays(4).atTime(9, 0);
+        assertEquals(0, scheduler.runDueJobs());
+        assertEquals(START.toEpochDay(), (long) runs.get(1));
+        assertEquals(2, runs.size());
+    }
+
+    @Test
+    void testFailedJobIsRetriedOnTheNextTick() {
+        int[] attempts = { 0 };
+        MaintenanceScheduler scheduler =
+            new MaintenanceScheduler(clock, new FileJobStateRepository(stateFile), new MetricsRegistry());
+        scheduler.schedule("flaky", LocalTime.MIDNIGHT, lastRun -> {
+            if (attempts[0]++ == 0) throw new IllegalStateException("disk full");
+        });
+
+        assertEquals(0, scheduler.runDueJobs());
+        assertEquals(1, scheduler.runDueJobs());
+        assertEquals(0, scheduler.runDueJobs());
+        assertEquals(2, attempts[0]);
+    }
+
+    @Test
+    void testStartedSchedulerRunsJobsInTheBackground() throws Exception {
+        CountDownLatch ran = new CountDownLatch(1);
+        MaintenanceScheduler scheduler =
+            new MaintenanceScheduler(clock, new FileJobStateRepository(stateFile), new MetricsRegistry());
+        scheduler.schedule("background", LocalTime.MIDNIGHT, lastRun -> ran.countDown());
+        scheduler.start(10, TimeUnit.MILLISECONDS);
+        try {
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+        } finally {
+            scheduler.shutdown(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void testRemindersCoverOnlyLoansThatBecameOverdueSinceTheLastRun() {
+        for (LoanRepository loanRepo : Arrays.asList(
+                new InMemoryLoanRepository(tempDir.resolve("loans.dat").toString()),
+                new ColumnarLoanRepository(tempDir.resolve("columnar.dat").toString()))) {
+            User alice = new User("u1", "Alice", "pass");
+            // CDs are due 7 days after borrowing: on March 8, 9, 10 and 12.
+            for (int i : new int[] { 0, 1, 2, 4 }) {
+                loanRepo.save(new Loan(new CD("cd" + i, "Album " + i, "Band"), alice, START.plusDays(i)));
+            }
+            List<String> reminded = new ArrayList<>();
+            ReminderService reminderService = new ReminderService(loanRepo, timeProvider, new MetricsRegistry());
+            reminderService.registerObserver((user, message) -> reminded.add(message));
+            MaintenanceScheduler scheduler =
+                new MaintenanceScheduler(clock, new InMemoryJobState(), new MetricsRegistry());
+            scheduler.schedule("reminders", LocalTime.of(8, 0), reminderService::sendNewlyOverdueReminders);
+
+            now = LocalDate.of(2024, 3, 10).atTime(8, 0);
+            scheduler.runDueJobs();
+            assertEquals(2, reminded.size());
+
+            now = LocalDate.of(2024, 3, 11).atTime(8, 0);
+            scheduler.runDueJobs();
+            assertEquals(3, reminded.size());
+            assertTrue(reminded.get(2).contains("Album 2"));
+
+            // Two days missed: the loan due on March 12 is reminded once, nothing twice.
+            now = LocalDate.of(2024, 3, 14).atTime(8, 0);
+            scheduler.runDueJobs();
+            scheduler.runDueJobs();
+            assertEquals(4, reminded.size());
+            assertTrue(reminded.get(3).contains("Album 4"));
+        }
+    }
+
+    @Test
+    void testDailyDigestsSurviveAFailingRecipientWithoutRepeats() {
+        InMemoryLoanRepository loanRepo = new InMemoryLoanRepository(tempDir.resolve("loans.dat").toString());
+        User alice = new User("u1", "Alice", "pass");
+        User bob = new User("u2", "Bob", "pass");
+        // CDs are due 7 days after borrowing: Alice's two on March 8, Bob's on March 8 and 9.
+        loanRepo.save(new Loan(new CD("cd0", "Album 0", "Band"), alice, START));
+        loanRepo.save(new Loan(new CD("cd1", "Album 1", "Band"), alice, START));
+        loanRepo.save(new Loan(new CD("cd2", "Album 2", "Band"), bob, START));
+        loanRepo.save(new Loan(new CD("cd3", "Album 3", "Band"), bob, START.plusDays(1)));
+        List<String> delivered = new ArrayList<>();
+        ReminderService reminderService = new ReminderService(loanRepo, timeProvider, new MetricsRegistry());
+        reminderService.registerObserver((user, message) -> {
+            if (user == bob) throw new IllegalStateException("mailbox full");
+        });
+        reminderService.registerObserver((user, message) -> delivered.add(user.getId() + ": " + message));
+        MaintenanceScheduler scheduler = new MaintenanceScheduler(clock, new InMemoryJobState(), new MetricsRegistry());
+        scheduler.schedule("reminders", LocalTime.of(8, 0), reminderService::sendNewlyOverdueDigests);
+
+        now = LocalDate.of(2024, 3, 9).atTime(8, 0);
+        assertEquals(1, scheduler.runDueJobs());
+        assertEquals(2, delivered.size());
+        assertTrue(delivered.get(0).startsWith("u1: You have 2 overdue item(s)"));
+        assertTrue(delivered.get(1).startsWith("u2: You have 1 overdue item(s)"));
+
+        now = LocalDate.of(2024, 3, 10).atTime(8, 0);
+        assertEquals(1, scheduler.runDueJobs());
+        assertEquals(3, delivered.size());
+        assertTrue(delivered.get(2).startsWith("u2: You have 1 overdue item(s)"));
+        assertTrue(delivered.get(2).contains("Album 3"));
+    }
+
+    private static final class InMemoryJobState implements JobStateRepository {
+        private final Map<String, Long> lastRuns = new HashMap<>();
+
+        @Override
+        public long getLastRun(String jobName) {
+            return lastRuns.getOrDefault(jobName, NEVER_RUN);
+        }
+
+        @Override
+        public void setLastRun(String jobName, long epochDay) {
+            lastRuns.put(jobName, epochDay);
+        }
+    }
+}
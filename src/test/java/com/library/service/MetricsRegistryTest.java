@@ -0,0 +1,107 @@
+package com.library.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.library.domain.Book;
+import com.library.domain.User;
+import com.library.metrics.HistogramSnapshot;
+import com.library.metrics.LatencyHistogram;
+import com.library.metrics.MetricsRegistry;
+import com.library.metrics.MetricsSnapshot;
+import com.library.repository.InMemoryItemRepository;
+import com.library.repository.InMemoryLoanRepository;
+
+class MetricsRegistryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testHistogramPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_500, snapshot.getMean());
+        assertEquals(1_000_000, snapshot.getMax());
+        assertWithin(500_000, snapshot.getP50());
+        assertWithin(900_000, snapshot.getP90());
+        assertWithin(990_000, snapshot.getP99());
+    }
+
+    @Test
+    void testEmptyHistogramReportsZeros() {
+        HistogramSnapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getP99());
+    }
+
+    @Test
+    void testSnapshotExportsTextAndJson() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("a.count").add(3);
+        registry.gauge("a.size", () -> 7);
+        registry.histogram("a.latency").record(2_000_000);
+
+        MetricsSnapshot snapshot = registry.snapshot();
+        assertTrue(snapshot.toText().contains("counter a.count 3"));
+        assertTrue(snapshot.toText().contains("gauge a.size 7"));
+        assertTrue(snapshot.toText().contains("timer a.latency count=1"));
+        assertTrue(snapshot.toJson().startsWith("{\"counters\":{\"a.count\":3},\"gauges\":{\"a.size\":7},\"timers\":{\"a.latency\":{\"count\":1,"));
+        assertTrue(snapshot.toJson().contains("\"maxNanos\":2000000}"));
+    }
+
+    @Test
+    void testInstanceGaugeDoesNotKeepItsOwnerAlive() throws InterruptedException {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.gauge("items.count", new InMemoryItemRepository(), repository -> 3);
+        for (int i = 0; i < 50 && registry.snapshot().getGauges().containsKey("items.count"); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertFalse(registry.snapshot().getGauges().containsKey("items.count"));
+    }
+
+    @Test
+    void testServicesAndRepositoriesRecordMetrics() {
+        MetricsRegistry registry = new MetricsRegistry();
+        InMemoryLoanRepository loanRepo = new InMemoryLoanRepository(tempDir.resolve("loans.dat").toString(), registry);
+        InMemoryItemRepository itemRepo = new InMemoryItemRepository(registry);
+        LoanService loanService = new LoanService(loanRepo, () -> LocalDate.of(2024, 1, 1), registry);
+        FineService fineService = new FineService(registry);
+
+        Book book = new Book("1", "Title", "Author");
+        itemRepo.save(book);
+        itemRepo.search("title");
+        User user = new User("u1", "Name", "pass");
+        loanService.borrowItem(user, book);
+        loanService.borrowItem(user, book);
+        loanService.checkOverdueItems();
+        fineService.payFine(user, 5.0);
+
+        MetricsSnapshot snapshot = registry.snapshot();
+        assertEquals(2, snapshot.getHistograms().get("loan.borrow").getCount());
+        assertEquals(1, snapshot.getCounters().get("loan.borrow.granted"));
+        assertEquals(1, snapshot.getCounters().get("loan.borrow.refused"));
+        assertEquals(1, snapshot.getHistograms().get("loan.checkOverdue").getCount());
+        assertEquals(1, snapshot.getHistograms().get("loans.save").getCount());
+        assertEquals(1, snapshot.getHistograms().get("loans.load").getCount());
+        assertEquals(1, snapshot.getHistograms().get("items.search").getCount());
+        assertEquals(1, snapshot.getGauges().get("loans.active"));
+        assertEquals(1, snapshot.getGauges().get("items.count"));
+        assertEquals(1, snapshot.getCounters().get("fine.payments.rejected"));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / 8, "Expected ~" + expected + " but was " + actual);
+    }
+}
@@ -2,12 +2,28 @@ package com.library.service;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional; 
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import com.library.domain.*;
 import com.library.repository.*;
@@ -17,12 +33,17 @@ class RepositoryTest {
     private InMemoryItemRepository itemRepo;
     private InMemoryUserRepository userRepo;
     private InMemoryLoanRepository loanRepo;
+    private String loanFile;
+
+    @TempDir
+    Path tempDir;
 
     @BeforeEach
     void setUp() {
         itemRepo = new InMemoryItemRepository();
         userRepo = new InMemoryUserRepository();
-        loanRepo = new InMemoryLoanRepository();
+        loanFile = tempDir.resolve("loans.dat").toString();
+        loanRepo = new InMemoryLoanRepository(loanFile);
     }
 
     @Test
@@ -45,6 +66,28 @@ class RepositoryTest {
         assertEquals(2, results.size());
     }
     
+    @Test
+    void testSearchMatchesSubstringsCaseInsensitively() {
+        itemRepo.save(new Book("isbn-777", "The Silmarillion", "Tolkien"));
+        itemRepo.save(new CD("sn-778", "Wish You Were Here", "Floydian Slip"));
+
+        assertEquals(1, itemRepo.searchByTitle("MARILL").size());
+        assertEquals(0, itemRepo.searchByTitle("tolkien").size());
+        assertEquals(1, itemRepo.search("tolkien").size());
+        assertEquals(1, itemRepo.search("FLOYDIAN").size());
+        assertEquals(2, itemRepo.search("-77").size());
+        assertEquals(0, itemRepo.search("silmarillionx").size());
+    }
+
+    @Test
+    void testSearchReflectsUpdatedItem() {
+        itemRepo.save(new Book("isbn-900", "Old Quixotic Title", "Someone"));
+        itemRepo.save(new Book("isbn-900", "New Zygote Title", "Someone"));
+
+        assertTrue(itemRepo.searchByTitle("quixotic").isEmpty());
+        assertEquals("New Zygote Title", itemRepo.searchByTitle("zygote").get(0).getTitle());
+    }
+
     @Test
     void testFindMissingItem() {
         assertFalse(itemRepo.findById("999").isPresent());
@@ -79,6 +122,112 @@ class RepositoryTest {
         assertFalse(userRepo.findById("u1").isPresent());
     }
 
+    @Test
+    void testFileItemRepositorySurvivesRestart() throws Exception {
+        String itemFile = tempDir.resolve("items.dat").toString();
+        try (FileItemRepository items = new FileItemRepository(itemFile)) {
+            items.save(new Book("1", "Java Concurrency", "Goetz"));
+            items.save(new CD("2", "Kind of Blue", "Davis"));
+            items.save(new Book("1", "Java Concurrency in Practice", "Goetz"));
+        }
+
+        try (FileItemRepository reopened = new FileItemRepository(itemFile)) {
+            LibraryItem book = reopened.findById("1").orElseThrow(AssertionError::new);
+            assertEquals("Java Concurrency in Practice", book.getTitle());
+            assertSame(book, reopened.findById("1").orElseThrow(AssertionError::new));
+            assertTrue(reopened.findById("2").orElseThrow(AssertionError::new) instanceof CD);
+
+            assertEquals(1, reopened.search("practice").size());
+            reopened.save(new Book("3", "Practice Makes Perfect", "Someone"));
+            assertEquals(2, reopened.search("practice").size());
+            assertEquals(1, reopened.searchByTitle("blue").size());
+        }
+    }
+
+    @Test
+    void testFileItemRepositoryReadsAcrossScanWindowsAndDropsATornTail() throws Exception {
+        String itemFile = tempDir.resolve("items.dat").toString();
+        try (FileItemRepository items = new FileItemRepository(itemFile)) {
+            for (int i = 0; i < 40_000; i++) {
+                items.save(new Book("b" + i, "A Reasonably Long Title " + i, "Author"));
+            }
+        }
+        long complete = new File(itemFile).length();
+        try (RandomAccessFile file = new RandomAccessFile(itemFile, "rw")) {
+            file.seek(complete);
+            file.write(new byte[] {1, 0, 9, 'b'});
+        }
+
+        try (FileItemRepository reopened = new FileItemRepository(itemFile)) {
+            assertEquals(complete, new File(itemFile).length());
+            assertEquals("A Reasonably Long Title 39999",
+                reopened.findById("b39999").orElseThrow(AssertionError::new).getTitle());
+            reopened.save(new Book("new", "New", "Author"));
+        }
+        try (FileItemRepository reopened = new FileItemRepository(itemFile)) {
+            assertTrue(reopened.findById("new").isPresent());
+            assertTrue(reopened.findById("b0").isPresent());
+        }
+    }
+
+    @Test
+    void testFileUserRepositorySurvivesRestartAndDeletes() throws Exception {
+        String userFile = tempDir.resolve("users.dat").toString();
+        try (FileUserRepository users = new FileUserRepository(userFile)) {
+            User alice = new User("u1", "Alice", "secret");
+            alice.setFinesOwed(2.5);
+            users.save(alice);
+            users.save(new User("u2", "Bob", "pass"));
+            users.delete(users.findById("u2").orElseThrow(AssertionError::new));
+        }
+
+        try (FileUserRepository reopened = new FileUserRepository(userFile)) {
+            User alice = reopened.findById("u1").orElseThrow(AssertionError::new);
+            assertEquals("secret", alice.getPassword());
+            assertEquals(2.5, alice.getFinesOwed());
+            assertFalse(reopened.findById("u2").isPresent());
+        }
+    }
+
+    @Test
+    void testOverwrittenRecordsAreCompacted() throws Exception {
+        String userFile = tempDir.resolve("users.dat").toString();
+        User user = new User("u1", "Alice", "secret");
+        try (FileUserRepository users = new FileUserRepository(userFile)) {
+            for (int i = 0; i < 25_000; i++) {
+                user.setFinesOwed(i);
+                users.save(user);
+            }
+        }
+
+        assertTrue(new File(userFile).length() < 10_000 * 30L, "Superseded records should have been dropped");
+        try (FileUserRepository reopened = new FileUserRepository(userFile)) {
+            assertEquals(24_999.0, reopened.findById("u1").orElseThrow(AssertionError::new).getFinesOwed());
+        }
+    }
+
+    @Test
+    void testTornRecordAtEndOfFileIsDiscarded() throws Exception {
+        String userFile = tempDir.resolve("users.dat").toString();
+        try (FileUserRepository users = new FileUserRepository(userFile)) {
+            users.save(new User("u1", "Alice", "secret"));
+            users.save(new User("u2", "Bob", "pass"));
+        }
+        File file = new File(userFile);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(file.length() - 3);
+        }
+
+        try (FileUserRepository reopened = new FileUserRepository(userFile)) {
+            assertTrue(reopened.findById("u1").isPresent());
+            assertFalse(reopened.findById("u2").isPresent());
+            reopened.save(new User("u3", "Carol", "pw"));
+        }
+        try (FileUserRepository reopened = new FileUserRepository(userFile)) {
+            assertTrue(reopened.findById("u3").isPresent());
+        }
+    }
+
     @Test
     void testLoanQueries() {
         User user = new User("u1", "Bob", "pass");
@@ -106,4 +255,391 @@ class RepositoryTest {
         
         assertEquals(0, loanRepo.findAllActiveLoans().size());
     }
-}
\ No newline at end of file
+    
+    @Test
+    void testLoansSurviveRestart() {
+        User user = new User("u1", "Bob", "pass");
+        Loan kept = new Loan(new Book("1", "T", "A"), user, LocalDate.of(2024, 1, 1));
+        Loan returned = new Loan(new CD("2", "Album", "Band"), user, LocalDate.of(2024, 1, 2));
+        loanRepo.save(kept);
+        loanRepo.save(returned);
+        returned.returnItem();
+        loanRepo.save(returned);
+
+        InMemoryLoanRepository reloaded = new InMemoryLoanRepository(loanFile);
+        List<Loan> active = reloaded.findAllActiveLoans();
+        assertEquals(1, active.size());
+        assertEquals("1", active.get(0).getItem().getId());
+        assertEquals(LocalDate.of(2024, 1, 29), active.get(0).getDueDate());
+        assertEquals(1, reloaded.findActiveLoansByUser(user).size());
+    }
+
+    @Test
+    void testReloadedLoansShareRepositoryInstances() {
+        User user = new User("u1", "Bob", "pass");
+        Book book = new Book("1", "T", "A");
+        CD cd = new CD("2", "Album", "Band");
+        loanRepo.save(new Loan(book, user, LocalDate.of(2024, 1, 1)));
+        loanRepo.save(new Loan(cd, user, LocalDate.of(2024, 1, 2)));
+
+        User liveUser = userRepo.save(new User("u1", "Bob", "pass"));
+        liveUser.setFinesOwed(3.0);
+        Book liveBook = new Book("1", "T", "A");
+        itemRepo.save(liveBook);
+
+        InMemoryLoanRepository reloaded = new InMemoryLoanRepository(loanFile, itemRepo, userRepo);
+        List<Loan> active = reloaded.findAllActiveLoans();
+
+        assertEquals(2, active.size());
+        assertSame(liveUser, active.get(0).getUser());
+        assertSame(liveUser, active.get(1).getUser());
+        assertSame(liveBook, active.get(0).getItem());
+        assertTrue(liveBook.isBorrowed());
+        assertEquals(3.0, active.get(1).getUser().getFinesOwed());
+
+        // An item the catalog does not know is kept as a placeholder and not registered.
+        assertFalse(itemRepo.findById("2").isPresent());
+        assertTrue(active.get(1).getItem() instanceof CD);
+        assertEquals(LocalDate.of(2024, 1, 9), active.get(1).getDueDate());
+        assertTrue(active.get(1).getItem().isBorrowed());
+    }
+
+    @Test
+    void testLoanFilesReferToUsersByIdOnly() throws IOException {
+        User user = new User("u1", "Bob", "s3cret");
+        Loan loan = new Loan(new Book("1", "T", "A"), user, LocalDate.of(2024, 1, 1));
+        loanRepo.save(loan);
+        loan.returnItem();
+        loanRepo.save(loan);
+        loanRepo.save(new Loan(new Book("2", "T", "A"), user, LocalDate.of(2024, 1, 1)));
+
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                String content = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+                assertFalse(content.contains("s3cret"), file + " holds the password");
+            }
+        }
+        User liveUser = userRepo.save(new User("u1", "Bob", "s3cret"));
+        InMemoryLoanRepository reloaded = new InMemoryLoanRepository(loanFile, itemRepo, userRepo);
+        assertSame(liveUser, reloaded.findActiveLoansByUser(liveUser).get(0).getUser());
+        assertSame(liveUser, reloaded.findLoanHistoryByUser("u1").get(0).getUser());
+    }
+
+    @Test
+    void testJournalIsCompactedIntoSnapshot() {
+        User user = new User("u1", "Bob", "pass");
+        int total = 2500;
+        for (int i = 0; i < total; i++) {
+            Loan loan = new Loan(new Book("b" + i, "T", "A"), user, LocalDate.of(2024, 1, 1));
+            loanRepo.save(loan);
+            if (i % 2 == 0) {
+                loan.returnItem();
+                loanRepo.save(loan);
+            }
+        }
+
+        assertTrue(new File(loanFile).exists(), "Snapshot should have been written");
+        assertTrue(new File(loanFile + ".journal").length() < new File(loanFile).length());
+
+        InMemoryLoanRepository reloaded = new InMemoryLoanRepository(loanFile);
+        assertEquals(total / 2, reloaded.findAllActiveLoans().size());
+    }
+
+    @Test
+    void testReturnedLoansAreArchivedAndQueryable() throws Exception {
+        User alice = new User("u1", "Alice", "pass");
+        User bob = new User("u2", "Bob", "pass");
+        int returns = 10_000 + 50;
+        for (int i = 0; i < returns; i++) {
+            Loan loan = new Loan(new Book("b" + i, "T", "A"), i % 2 == 0 ? alice : bob, LocalDate.of(2024, 1, 1));
+            loanRepo.save(loan);
+            loan.returnItem();
+            loanRepo.save(loan);
+        }
+        loanRepo.save(new Loan(new Book("b0", "T", "A"), alice, LocalDate.of(2024, 2, 1)));
+
+        // The full segment is compressed in the background; queries read it either way.
+        assertEquals(returns / 2 + 1, loanRepo.findLoanHistoryByUser("u1").size());
+        File archive = new File(loanFile + ".archive");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (archive.list((dir, name) -> name.endsWith(".sealing")).length > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, archive.list((dir, name) -> name.endsWith(".gz")).length);
+        assertEquals(0, archive.list((dir, name) -> name.endsWith(".sealing")).length);
+
+        InMemoryLoanRepository reloaded = new InMemoryLoanRepository(loanFile);
+        assertEquals(1, reloaded.findAllActiveLoans().size());
+        List<Loan> aliceHistory = reloaded.findLoanHistoryByUser("u1");
+        assertEquals(returns / 2 + 1, aliceHistory.size());
+        assertFalse(aliceHistory.get(0).isActive());
+        assertTrue(aliceHistory.get(aliceHistory.size() - 1).isActive());
+
+        List<Loan> itemHistory = reloaded.findLoanHistoryByItem("b0");
+        assertEquals(2, itemHistory.size());
+        assertEquals(LocalDate.of(2024, 1, 1), itemHistory.get(0).getBorrowDate());
+        assertEquals(1, reloaded.findLoanHistoryByItem("b" + (returns - 1)).size());
+        assertTrue(reloaded.findLoanHistoryByUser("nobody").isEmpty());
+    }
+
+    @Test
+    void testSaveAllIsReplayedAsOneBatch() throws Exception {
+        User user = new User("u1", "Bob", "pass");
+        Loan earlier = new Loan(new Book("1", "T", "A"), user, LocalDate.of(2024, 1, 1));
+        loanRepo.save(earlier);
+        earlier.returnItem();
+        Loan second = new Loan(new Book("2", "T", "A"), user, LocalDate.of(2024, 1, 2));
+        Loan third = new Loan(new CD("3", "Album", "Band"), user, LocalDate.of(2024, 1, 2));
+        loanRepo.saveAll(Arrays.asList(earlier, second, third));
+
+        assertEquals(2, loanRepo.findAllActiveLoans().size());
+        assertFalse(loanRepo.findActiveLoanByItem("1").isPresent());
+
+        loanRepo.saveAll(Arrays.asList(new Loan(new Book("4", "T", "A"), user, LocalDate.of(2024, 1, 3)),
+            new Loan(new Book("5", "T", "A"), user, LocalDate.of(2024, 1, 3))));
+        File journal = new File(loanFile + ".journal");
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+            raf.setLength(journal.length() - 3);
+        }
+
+        InMemoryLoanRepository reloaded = new InMemoryLoanRepository(loanFile);
+        List<String> active = reloaded.findAllActiveLoans().stream()
+            .map(loan -> loan.getItem().getId()).collect(Collectors.toList());
+        assertEquals(Arrays.asList("2", "3"), active);
+        assertEquals(1, reloaded.findLoanHistoryByItem("1").size());
+        assertFalse(reloaded.findLoanHistoryByItem("1").get(0).isActive());
+    }
+
+    @Test
+    void testCorruptRecordsAreKeptAsideInsteadOfDiscarded() throws Exception {
+        User user = new User("u1", "Bob", "pass");
+        File journal = new File(loanFile + ".journal");
+        loanRepo.save(new Loan(new Book("1", "T", "A"), user, LocalDate.of(2024, 1, 1)));
+        long firstRecordEnd = journal.length();
+        loanRepo.save(new Loan(new Book("2", "T", "A"), user, LocalDate.of(2024, 1, 1)));
+        loanRepo.save(new Loan(new Book("3", "T", "A"), user, LocalDate.of(2024, 1, 1)));
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+            raf.seek(firstRecordEnd);
+            raf.write(99); // not a record type
+        }
+        byte[] corruptJournal = Files.readAllBytes(journal.toPath());
+
+        InMemoryLoanRepository reloaded = new InMemoryLoanRepository(loanFile);
+        assertEquals(1, reloaded.findAllActiveLoans().size());
+        File keptJournal = new File(loanFile + ".journal.corrupt");
+        assertArrayEquals(corruptJournal, Files.readAllBytes(keptJournal.toPath()));
+
+        File snapshot = new File(loanFile);
+        try (RandomAccessFile raf = new RandomAccessFile(snapshot, "rw")) {
+            raf.setLength(snapshot.length() - 3);
+        }
+        byte[] corruptSnapshot = Files.readAllBytes(snapshot.toPath());
+        assertTrue(new InMemoryLoanRepository(loanFile).findAllActiveLoans().isEmpty());
+        assertArrayEquals(corruptSnapshot, Files.readAllBytes(new File(loanFile + ".corrupt").toPath()));
+        assertArrayEquals(corruptJournal, Files.readAllBytes(keptJournal.toPath()));
+    }
+
+    @Test
+    void testArchivedSequenceNumbersAreNotReusedAfterCorruptRecordsAreDropped() throws Exception {
+        User user = new User("u1", "Bob", "pass");
+        File journal = new File(loanFile + ".journal");
+        loanRepo.save(new Loan(new Book("1", "T", "A"), user, LocalDate.of(2024, 1, 1)));
+        long firstRecordEnd = journal.length();
+        Loan returned = new Loan(new Book("2", "T", "A"), user, LocalDate.of(2024, 1, 1));
+        loanRepo.save(returned);
+        returned.returnItem();
+        loanRepo.save(returned);
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+            raf.seek(firstRecordEnd);
+            raf.write(99); // not a record type
+        }
+
+        InMemoryLoanRepository reloaded = new InMemoryLoanRepository(loanFile);
+        for (String itemId : Arrays.asList("4", "5")) {
+            Loan loan = new Loan(new Book(itemId, "T", "A"), user, LocalDate.of(2024, 2, 1));
+            reloaded.save(loan);
+            loan.returnItem();
+            reloaded.save(loan);
+        }
+        InMemoryLoanRepository restarted = new InMemoryLoanRepository(loanFile);
+        for (LoanHistoryRepository repo : Arrays.asList(reloaded, restarted)) {
+            assertEquals(1, repo.findLoanHistoryByItem("2").size());
+            assertEquals(1, repo.findLoanHistoryByItem("4").size());
+            assertEquals(1, repo.findLoanHistoryByItem("5").size());
+            assertEquals(4, repo.findLoanHistoryByUser("u1").size());
+        }
+    }
+
+    @Test
+    void testFailedJournalWriteThrowsAndLeavesNoTrace() throws Exception {
+        String columnarFile = tempDir.resolve("columnar.dat").toString();
+        for (String file : Arrays.asList(loanFile, columnarFile)) {
+            LoanRepository repo = file.equals(loanFile) ? loanRepo : new ColumnarLoanRepository(file);
+            User user = new User("u1", "Bob", "pass");
+            repo.save(new Loan(new Book("1", "T", "A"), user, LocalDate.of(2024, 1, 1)));
+
+            // A directory where the journal should be makes the next append fail.
+            File journal = new File(file + ".journal");
+            File aside = new File(file + ".aside");
+            assertTrue(journal.renameTo(aside) && journal.mkdir());
+            Loan failed = new Loan(new Book("2", "T", "A"), user, LocalDate.of(2024, 1, 1));
+            assertThrows(UncheckedIOException.class, () -> repo.save(failed));
+            assertThrows(UncheckedIOException.class, () -> repo.saveAll(Arrays.asList(failed)));
+            assertFalse(repo.findActiveLoanByItem("2").isPresent());
+            assertTrue(journal.delete() && aside.renameTo(journal));
+
+            repo.save(new Loan(new Book("3", "T", "A"), user, LocalDate.of(2024, 1, 1)));
+            LoanRepository reloaded = file.equals(loanFile)
+                ? new InMemoryLoanRepository(file) : new ColumnarLoanRepository(file);
+            List<String> active = reloaded.findAllActiveLoans().stream()
+                .map(loan -> loan.getItem().getId()).sorted().collect(Collectors.toList());
+            assertEquals(Arrays.asList("1", "3"), active);
+            assertFalse(new File(file + ".journal.corrupt").exists());
+        }
+    }
+
+    @Test
+    void testLoanSummaryFollowsSavesReturnsAndTheDate() {
+        for (LoanRepository repo : Arrays.asList(loanRepo, new ColumnarLoanRepository(tempDir.resolve("columnar.dat").toString()))) {
+            User user = new User("u1", "Bob", "pass");
+            LocalDate[] today = { LocalDate.of(2024, 1, 1) };
+            LoanService loanService = new LoanService(repo, () -> today[0]);
+            Loan book = new Loan(new Book("1", "T", "A"), user, today[0]);
+            Loan cd = new Loan(new CD("2", "Album", "Band"), user, today[0]);
+            repo.saveAll(Arrays.asList(book, cd));
+
+            LoanSummary summary = repo.getLoanSummary(user);
+            assertEquals(2, summary.getActiveLoans());
+            assertEquals(cd.getDueEpochDay(), summary.getEarliestDueEpochDay());
+
+            today[0] = cd.getDueDate();
+            assertTrue(loanService.borrowItem(user, new Book("3", "T", "A")).startsWith("Success"));
+            // The next day the CD is overdue without anything being saved in between.
+            today[0] = cd.getDueDate().plusDays(1);
+            assertTrue(loanService.borrowItem(user, new Book("4", "T", "A")).contains("overdue items"));
+
+            assertTrue(loanService.returnItem("2").startsWith("Success"));
+            assertEquals(2, repo.getLoanSummary(user).getActiveLoans());
+            assertEquals(book.getDueEpochDay(), repo.getLoanSummary(user).getEarliestDueEpochDay());
+            assertTrue(loanService.borrowItem(user, new Book("4", "T", "A")).startsWith("Success"));
+
+            loanService.returnItems(Arrays.asList("1", "3", "4"));
+            assertSame(LoanSummary.NONE, repo.getLoanSummary(user));
+        }
+    }
+
+    @Test
+    void testFindActiveLoanByItem() {
+        User user = new User("u1", "Bob", "pass");
+        Book book = new Book("1", "T", "A");
+        Loan loan = new Loan(book, user, LocalDate.now());
+        loanRepo.save(loan);
+
+        assertSame(loan, loanRepo.findActiveLoanByItem("1").orElseThrow(AssertionError::new));
+        assertFalse(loanRepo.findActiveLoanByItem("2").isPresent());
+
+        loan.returnItem();
+        assertFalse(loanRepo.findActiveLoanByItem("1").isPresent());
+        assertTrue(loanRepo.findActiveLoansByUser(user).isEmpty());
+
+        loanRepo.save(loan);
+        assertTrue(loanRepo.findAllActiveLoans().isEmpty());
+    }
+
+    @Test
+    void testFindLoansDueBefore() {
+        User user = new User("u1", "Bob", "pass");
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        Loan book = new Loan(new Book("1", "T", "A"), user, start);
+        Loan cd = new Loan(new CD("2", "Album", "Band"), user, start);
+        Loan returnedCd = new Loan(new CD("3", "Other", "Band"), user, start);
+        loanRepo.save(book);
+        loanRepo.save(cd);
+        loanRepo.save(returnedCd);
+        returnedCd.returnItem();
+
+        assertTrue(loanRepo.findLoansDueBefore(start.plusDays(7)).isEmpty());
+        assertEquals(1, loanRepo.findLoansDueBefore(start.plusDays(8)).size());
+
+        List<Loan> due = loanRepo.findLoansDueBefore(start.plusDays(60));
+        assertEquals(2, due.size());
+        assertSame(cd, due.get(0));
+        assertSame(book, due.get(1));
+    }
+
+    @Test
+    void testStreamsAndPagesMatchListQueries() {
+        User alice = new User("u1", "Alice", "pass");
+        User bob = new User("u2", "Bob", "pass");
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        List<Loan> returned = new ArrayList<>();
+        for (int i = 0; i < 700; i++) {
+            Loan loan = new Loan(new Book("b" + i, "Title " + i, "A"), i % 3 == 0 ? alice : bob, start.plusDays(i % 40));
+            loanRepo.save(loan);
+            if (i % 7 == 0) returned.add(loan);
+        }
+        returned.forEach(Loan::returnItem);
+        LocalDate cutoff = start.plusDays(50);
+
+        assertEquals(loanRepo.findAllActiveLoans(), loanRepo.streamActiveLoans().collect(Collectors.toList()));
+        assertEquals(loanRepo.findLoansDueBefore(cutoff), loanRepo.streamLoansDueBefore(cutoff).collect(Collectors.toList()));
+        assertEquals(loanRepo.findActiveLoansByUser(alice), loanRepo.streamActiveLoansByUser(alice).collect(Collectors.toList()));
+
+        List<Loan> paged = new ArrayList<>();
+        PageRequest<Loan> request = PageRequest.first(128);
+        Page<Loan> page;
+        do {
+            page = loanRepo.findLoansDueBefore(cutoff, request);
+            paged.addAll(page.getContent());
+            request = page.nextRequest();
+        } while (page.hasNext());
+        assertEquals(loanRepo.findLoansDueBefore(cutoff), paged);
+
+        Page<Loan> byItem = loanRepo.findActiveLoans(PageRequest.<Loan>of(2, 3)
+            .sortedBy(Comparator.comparing((Loan loan) -> loan.getItem().getId()).reversed()));
+        assertEquals(Arrays.asList("b96", "b95", "b94"),
+            byItem.getContent().stream().map(loan -> loan.getItem().getId()).collect(Collectors.toList()));
+        assertTrue(byItem.hasNext());
+    }
+
+    @Test
+    void testItemSearchPages() {
+        for (int i = 0; i < 25; i++) {
+            itemRepo.save(new Book(String.valueOf(i), "Atlas " + (char) ('z' - i), "Author"));
+        }
+
+        Page<LibraryItem> first = itemRepo.search("atlas", PageRequest.<LibraryItem>first(10)
+            .sortedBy(Comparator.comparing(LibraryItem::getTitle)));
+        assertEquals("Atlas b", first.getContent().get(0).getTitle());
+        assertTrue(first.hasNext());
+        Page<LibraryItem> last = itemRepo.search("atlas", first.nextRequest().next());
+        assertEquals(5, last.getContent().size());
+        assertFalse(last.hasNext());
+        assertEquals(25, itemRepo.streamByTitle("ATLAS").count());
+        assertEquals(0, itemRepo.streamSearch("atlases").count());
+    }
+
+    @Test
+    void testLegacySerializedFileIsMigratedOnStartup() throws Exception {
+        User user = new User("u1", "Bob", "pass");
+        List<Loan> legacy = new ArrayList<>();
+        legacy.add(new Loan(new Book("1", "T", "A"), user, LocalDate.of(2024, 1, 1)));
+        Loan returned = new Loan(new CD("2", "Album", "Band"), user, LocalDate.of(2024, 1, 1));
+        returned.returnItem();
+        legacy.add(returned);
+        String legacyFile = tempDir.resolve("legacy.dat").toString();
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(legacyFile))) {
+            oos.writeObject(legacy);
+        }
+        assertTrue(LoanFileMigrator.isLegacyFormat(legacyFile));
+
+        InMemoryLoanRepository migrated = new InMemoryLoanRepository(legacyFile);
+
+        assertEquals(1, migrated.findAllActiveLoans().size());
+        assertFalse(LoanFileMigrator.isLegacyFormat(legacyFile));
+        assertTrue(new File(legacyFile + ".legacy").exists());
+        assertTrue(new File(legacyFile).length() < new File(legacyFile + ".legacy").length());
+        assertEquals(1, new InMemoryLoanRepository(legacyFile).findAllActiveLoans().size());
+        assertEquals(2, migrated.findLoanHistoryByUser("u1").size());
+    }
+}